@@ -0,0 +1,169 @@
+/* Allocation guard for the hook upcall path: drives millions of upcalls and fails if they allocate */
+
+import junicorn.*;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+
+public class AllocationGuard
+{
+    public static final int ADDRESS = 0x1000000;
+    public static final int DATA = 0x1100000;
+    public static final int ITERATIONS = 20000;
+    public static final int WARMUP_RUNS = 20;
+    public static final int RUNS = 20;
+
+    // anything at or above this means some upcall allocates; per-run overhead stays far below it
+    public static final double MAX_BYTES_PER_UPCALL = 0.01;
+
+    // one class per hook interface: the dispatcher picks the handler from the interface a hook implements
+    static abstract class Counter
+    {
+        long calls;
+    }
+
+    static class Code extends Counter implements CodeHook
+    {
+        public void hook(Unicorn uc, long address, int size, Object user_data)
+        {
+            calls++;
+        }
+    }
+
+    static class Adaptive extends Counter implements AdaptiveCodeHook
+    {
+        public boolean hook(Unicorn uc, long address, int size, Object user_data)
+        {
+            calls++;
+            return true;
+        }
+    }
+
+    static class Memory extends Counter implements MemoryAccessHook
+    {
+        public void hook(Unicorn uc, int type, long address, int size, long value, Object user_data)
+        {
+            calls++;
+        }
+    }
+
+    static class Interrupt extends Counter implements InterruptHook
+    {
+        public void hook(Unicorn uc, int intno, Object user_data)
+        {
+            calls++;
+        }
+    }
+
+    static class In extends Counter implements InstructionInHook
+    {
+        public int hook(Unicorn uc, int port, int size, Object user_data)
+        {
+            calls++;
+            return 0;
+        }
+    }
+
+    static class Out extends Counter implements InstructionOutHook
+    {
+        public void hook(Unicorn uc, int port, int size, int value, Object user_data)
+        {
+            calls++;
+        }
+    }
+
+    // mov edx, 0x10; mov ecx, ITERATIONS
+    // loop: mov [DATA], ecx; in al, dx; out dx, al; int 0x80; dec ecx; jnz loop
+    static byte[] code()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xba);
+        imm32(out, 0x10);
+        out.write(0xb9);
+        imm32(out, ITERATIONS);
+        byte[] body = {(byte) 0x89, 0x0d, 0, 0, 0x10, 0x01, (byte) 0xec, (byte) 0xee, (byte) 0xcd, (byte) 0x80};
+        out.write(body, 0, body.length);
+        out.write(0x49);
+        out.write(0x75);
+        out.write(-(body.length + 3));
+        return out.toByteArray();
+    }
+
+    static void imm32(ByteArrayOutputStream out, int value)
+    {
+        for (int i = 0; i < 4; i++)
+            out.write(value >>> (i * 8));
+    }
+
+    static long allocated_bytes()
+    {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static void main(String args[]) throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+
+        byte[] code = code();
+        Unicorn uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.mem_map(ADDRESS, 2 * 1024 * 1024, Unicorn.UC_PROT_ALL);
+        uc.mem_write(ADDRESS, code);
+
+        Code code_hook = new Code();
+        Code block_hook = new Code();
+        Memory mem_hook = new Memory();
+        Interrupt intr_hook = new Interrupt();
+        In in_hook = new In();
+        Out out_hook = new Out();
+        Adaptive adaptive_hook = new Adaptive();
+        Code conditional_hook = new Code();
+        Code listener_a = new Code();
+        Code listener_b = new Code();
+
+        uc.hook_add(Unicorn.UC_HOOK_CODE, code_hook, 1, 0, null);
+        uc.hook_add(Unicorn.UC_HOOK_BLOCK, block_hook, 1, 0, null);
+        uc.hook_add(Unicorn.UC_HOOK_MEM_WRITE, mem_hook, 1, 0, null);
+        uc.hook_add(Unicorn.UC_HOOK_INTR, intr_hook, 1, 0, null);
+        uc.hook_add(Unicorn.UC_HOOK_INSN, Unicorn.UC_X86_INS_IN, in_hook, 1, 0, null);
+        uc.hook_add(Unicorn.UC_HOOK_INSN, Unicorn.UC_X86_INS_OUT, out_hook, 1, 0, null);
+        uc.hook_add_adaptive(Unicorn.UC_HOOK_CODE, adaptive_hook, 1, 0, null);
+        uc.hook_add_listener(Unicorn.UC_HOOK_CODE, listener_a, ADDRESS, ADDRESS + code.length, null);
+        uc.hook_add_listener(Unicorn.UC_HOOK_CODE, listener_b, ADDRESS, ADDRESS + code.length, null);
+
+        // passes for every instruction, so the native condition runs and the upcall still happens
+        uc.hook_add(Unicorn.UC_HOOK_CODE, conditional_hook, 1, 0, null);
+        uc.hook_set_condition(conditional_hook, HookCondition.arg(0).ge(ADDRESS));
+
+        // listener_b is left out: the multiplexer makes one upcall for both listeners
+        Counter[] counters = {code_hook, block_hook, mem_hook, intr_hook, in_hook, out_hook, adaptive_hook, conditional_hook, listener_a};
+
+        for (int i = 0; i < WARMUP_RUNS; i++)
+            uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+
+        long upcalls_before = 0;
+        for (Counter counter : counters)
+            upcalls_before += counter.calls;
+
+        long allocated_before = allocated_bytes();
+        for (int i = 0; i < RUNS; i++)
+            uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+        long allocated = allocated_bytes() - allocated_before;
+
+        long upcalls = -upcalls_before;
+        for (Counter counter : counters)
+            upcalls += counter.calls;
+
+        uc.close();
+
+        double per_upcall = (double) allocated / upcalls;
+        System.out.printf(">>> upcalls=%d allocated=%d bytes (%.1f per run) bytes/upcall=%.6f\n",
+                upcalls, allocated, (double) allocated / RUNS, per_upcall);
+
+        if (upcalls == 0 || per_upcall >= MAX_BYTES_PER_UPCALL)
+        {
+            System.out.println(">>> FAIL: the hook upcall path allocates");
+            System.exit(1);
+        }
+        System.out.println(">>> OK");
+    }
+}
@@ -0,0 +1,67 @@
+/* Scaling benchmark for EmulationExecutor: the same guest routine over many inputs with 1..N workers */
+
+import junicorn.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ExecutorScaling
+{
+    // mov ecx, [DATA]; xor eax, eax; loop: add eax, ecx; dec ecx; jnz loop; mov [DATA+4], eax
+    public static final byte[] X86_CODE32_SUM = {-117, 13, 0, 0, 0, 2, 49, -64, 1, -56, 73, 117, -5, -93, 4, 0, 0, 2};
+
+    public static final int ADDRESS = 0x1000000;
+    public static final int DATA = 0x2000000;
+
+    public static final int JOBS = 200000;
+
+    private static Unicorn newEngine() throws UnicornException
+    {
+        Unicorn uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.mem_map(ADDRESS, 4096, Unicorn.UC_PROT_READ | Unicorn.UC_PROT_EXEC);
+        uc.mem_map(DATA, 4096, Unicorn.UC_PROT_READ | Unicorn.UC_PROT_WRITE);
+        uc.mem_write(ADDRESS, X86_CODE32_SUM);
+        return uc;
+    }
+
+    private static long sum(Unicorn uc, Integer input) throws UnicornException
+    {
+        byte[] data = {(byte) input.intValue(), (byte) (input >> 8), (byte) (input >> 16), (byte) (input >> 24)};
+        uc.mem_write(DATA, data);
+        uc.emu_start(ADDRESS, ADDRESS + X86_CODE32_SUM.length, 0, 0);
+        byte[] out = uc.mem_read(DATA + 4, 4);
+        return (out[0] & 0xffL) | (out[1] & 0xffL) << 8 | (out[2] & 0xffL) << 16 | (out[3] & 0xffL) << 24;
+    }
+
+    public static void main(String args[]) throws Exception
+    {
+        System.loadLibrary("unicorn");
+
+        int jobs = args.length > 0 ? Integer.parseInt(args[0]) : JOBS;
+        List<Integer> inputs = new ArrayList<>(jobs);
+        for (int i = 0; i < jobs; i++)
+            inputs.add(100 + i % 100);
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double base = 0;
+        for (int workers = 1; workers <= cores; workers *= 2)
+        {
+            try (EmulationExecutor<Integer, Long> executor = new EmulationExecutor<>(ExecutorScaling::newEngine, ExecutorScaling::sum, workers))
+            {
+                // warm up: open every worker engine and translate the routine
+                executor.reduce(inputs.subList(0, Math.min(jobs, workers * 100)), 0L, Long::sum, Long::sum);
+
+                long start = System.nanoTime();
+                long total = executor.reduce(inputs, 0L, Long::sum, Long::sum);
+                double seconds = (System.nanoTime() - start) / 1e9;
+
+                double rate = jobs / seconds;
+                if (workers == 1)
+                    base = rate;
+
+                System.out.printf(">>> workers=%d jobs/s=%.0f speedup=%.2f efficiency=%.0f%% (checksum 0x%x)\n",
+                        workers, rate, rate / base, 100 * rate / base / workers, total);
+            }
+        }
+    }
+}
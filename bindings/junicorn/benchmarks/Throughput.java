@@ -0,0 +1,270 @@
+/* End-to-end throughput: representative guest workloads with no hooks, block hooks, code hooks and the sampling profiler, reported as JSON */
+
+import junicorn.*;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class Throughput
+{
+    public static final int ADDRESS = 0x1000000;
+    public static final int LOOP_ITERATIONS = 100000;
+
+    // safety net for the shellcode workloads, they stop themselves through exit/execve; a count
+    // makes unicorn add its own code hook, so the loops run without one
+    public static final int MAX_INSTRUCTIONS = 1000000;
+
+    // blocks between profiler samples, the profiler run also takes a timer sample every millisecond
+    public static final int PROFILER_INTERVAL = 10000;
+
+    // loop: add eax, ecx; dec ecx; jnz loop
+    public static final byte[] X86_LOOP = {1, -56, 73, 117, -5};
+
+    // loop: add r0, r0, r1; subs r1, r1, #1; bne loop
+    public static final byte[] ARM_LOOP = {1, 0, -128, -32, 1, 16, 81, -30, -4, -1, -1, 26};
+
+    // loop: add x0, x0, x1; subs x1, x1, #1; b.ne loop
+    public static final byte[] ARM64_LOOP = {0, 0, 1, -117, 33, 4, 0, -15, -63, -1, -1, 84};
+
+    // loop: addu v0, v0, a0; addiu a0, a0, -1; bnez a0, loop; nop
+    public static final byte[] MIPS_LOOP = {33, 16, 68, 0, -1, -1, -124, 36, -3, -1, -128, 20, 0, 0, 0, 0};
+
+    // self-decoding execve("/bin/sh") from samples/Shellcode.java
+    public static final byte[] X86_CODE32_SELF = {-21, 28, 90, -119, -42, -117, 2, 102, 61, -54, 125, 117, 6, 102, 5, 3, 3, -119, 2, -2, -62, 61, 65, 65, 65, 65, 117, -23, -1, -26, -24, -33, -1, -1, -1, 49, -46, 106, 11, 88, -103, 82, 104, 47, 47, 115, 104, 104, 47, 98, 105, 110, -119, -29, 82, 83, -119, -31, -54, 125, 65, 65, 65, 65, 65, 65, 65, 65};
+
+    // socketcall heavy payloads from samples/SampleNetworkAuditing.java
+    public static final byte[] X86_SEND_ETCPASSWD = {106, 102, 88, 49, -37, 67, 49, -46, 82, 106, 1, 106, 2, -119, -31, -51, -128, -119, -58, 106, 102, 88, 67, 104, 127, 1, 1, 1, 102, 104, 48, 57, 102, 83, -119, -31, 106, 16, 81, 86, -119, -31, 67, -51, -128, -119, -58, 106, 1, 89, -80, 63, -51, -128, -21, 39, 106, 5, 88, 91, 49, -55, -51, -128, -119, -61, -80, 3, -119, -25, -119, -7, 49, -46, -74, -1, -78, -1, -51, -128, -119, -62, 106, 4, 88, -77, 1, -51, -128, 106, 1, 88, 67, -51, -128, -24, -44, -1, -1, -1, 47, 101, 116, 99, 47, 112, 97, 115, 115, 119, 100};
+    public static final byte[] X86_BIND_TCP = {106, 102, 88, 106, 1, 91, 49, -10, 86, 83, 106, 2, -119, -31, -51, -128, 95, -105, -109, -80, 102, 86, 102, 104, 5, 57, 102, 83, -119, -31, 106, 16, 81, 87, -119, -31, -51, -128, -80, 102, -77, 4, 86, 87, -119, -31, -51, -128, -80, 102, 67, 86, 86, 87, -119, -31, -51, -128, 89, 89, -79, 2, -109, -80, 63, -51, -128, 73, 121, -7, -80, 11, 104, 47, 47, 115, 104, 104, 47, 98, 105, 110, -119, -29, 65, -119, -54, -51, -128};
+    public static final byte[] X86_REVERSE_TCP = {106, 102, 88, 106, 1, 91, 49, -46, 82, 83, 106, 2, -119, -31, -51, -128, -110, -80, 102, 104, 127, 1, 1, 1, 102, 104, 5, 57, 67, 102, 83, -119, -31, 106, 16, 81, 82, -119, -31, 67, -51, -128, 106, 2, 89, -121, -38, -80, 63, -51, -128, 73, 121, -7, -80, 11, 65, -119, -54, 82, 104, 47, 47, 115, 104, 104, 47, 98, 105, 110, -119, -29, -51, -128};
+
+    private static final String[] HOOKS = {"none", "block", "code", "profiler"};
+
+    interface Prepare
+    {
+        void prepare(Unicorn uc) throws UnicornException;
+    }
+
+    static class Workload
+    {
+        final String name;
+        final int arch;
+        final int mode;
+        final byte[] code;
+        final boolean syscalls;
+        final Prepare prepare;
+
+        Workload(String name, int arch, int mode, byte[] code, boolean syscalls, Prepare prepare)
+        {
+            this.name = name;
+            this.arch = arch;
+            this.mode = mode;
+            this.code = code;
+            this.syscalls = syscalls;
+            this.prepare = prepare;
+        }
+    }
+
+    static List<Workload> workloads()
+    {
+        List<Workload> list = new ArrayList<>();
+        list.add(new Workload("x86_loop", Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32, X86_LOOP, false,
+                uc -> uc.reg_write(Unicorn.UC_X86_REG_ECX, LOOP_ITERATIONS)));
+        list.add(new Workload("arm_loop", Unicorn.UC_ARCH_ARM, Unicorn.UC_MODE_ARM, ARM_LOOP, false,
+                uc -> uc.reg_write(Unicorn.UC_ARM_REG_R1, LOOP_ITERATIONS)));
+        list.add(new Workload("arm64_loop", Unicorn.UC_ARCH_ARM64, Unicorn.UC_MODE_ARM, ARM64_LOOP, false,
+                uc -> uc.reg_write(Unicorn.UC_ARM64_REG_X1, LOOP_ITERATIONS)));
+        list.add(new Workload("mips_loop", Unicorn.UC_ARCH_MIPS, Unicorn.UC_MODE_MIPS32, MIPS_LOOP, false,
+                uc -> uc.reg_write(Unicorn.UC_MIPS_REG_A0, LOOP_ITERATIONS)));
+
+        Prepare stack = uc -> uc.reg_write(Unicorn.UC_X86_REG_ESP, ADDRESS + 0x200000);
+        list.add(new Workload("shellcode_self_decode", Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32, X86_CODE32_SELF, true, stack));
+        list.add(new Workload("net_send_etcpasswd", Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32, X86_SEND_ETCPASSWD, true, stack));
+        list.add(new Workload("net_bind_tcp", Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32, X86_BIND_TCP, true, stack));
+        list.add(new Workload("net_reverse_tcp", Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32, X86_REVERSE_TCP, true, stack));
+        return list;
+    }
+
+    static class Result
+    {
+        String workload;
+        String hooks;
+        long runs;
+        long instructions;
+        long upcalls;
+        long allocated;
+        double seconds;
+    }
+
+    // every syscall "succeeds" with fd 3, exit and execve end the run
+    static class SyscallHook implements InterruptHook
+    {
+        long calls;
+
+        public void hook(Unicorn uc, int intno, Object user_data)
+        {
+            calls++;
+            try
+            {
+                long eax = uc.reg_read(Unicorn.UC_X86_REG_EAX);
+                if (eax == 1 || eax == 11)
+                    uc.emu_stop();
+                else
+                    uc.reg_write(Unicorn.UC_X86_REG_EAX, 3);
+            }
+            catch (UnicornException e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    static class CountingHook implements CodeHook
+    {
+        long calls;
+
+        public void hook(Unicorn uc, long address, int size, Object user_data)
+        {
+            calls++;
+        }
+    }
+
+    static void run_once(Unicorn uc, Workload workload) throws UnicornException
+    {
+        // the shellcode decodes itself in place, so the code is rewritten before every run
+        uc.mem_write(ADDRESS, workload.code);
+        workload.prepare.prepare(uc);
+        uc.emu_start(ADDRESS, ADDRESS + workload.code.length, 0, workload.syscalls ? MAX_INSTRUCTIONS : 0);
+    }
+
+    static Result measure(Workload workload, String hooks, double seconds) throws UnicornException
+    {
+        Unicorn uc = new Unicorn(workload.arch, workload.mode);
+        SamplingProfiler profiler = null;
+        try
+        {
+            uc.mem_map(ADDRESS, 2 * 1024 * 1024, Unicorn.UC_PROT_ALL);
+
+            SyscallHook syscalls = new SyscallHook();
+            if (workload.syscalls)
+                uc.hook_add(Unicorn.UC_HOOK_INTR, syscalls, 1, 0, null);
+
+            // instructions per run, counted natively so the measured runs carry no counting hook
+            InstructionCounter counter = uc.instruction_counter();
+            run_once(uc, workload);
+            long per_run = counter.count();
+            counter.close();
+
+            CountingHook counting = new CountingHook();
+            if (hooks.equals("block"))
+                uc.hook_add(Unicorn.UC_HOOK_BLOCK, counting, 1, 0, null);
+            else if (hooks.equals("code"))
+                uc.hook_add(Unicorn.UC_HOOK_CODE, counting, 1, 0, null);
+            else if (hooks.equals("profiler"))
+                profiler = uc.profiler(PROFILER_INTERVAL, 8);
+            if (profiler != null)
+                profiler.start_timer(1000);
+
+            long warmup_end = System.nanoTime() + (long) (seconds * 0.25e9);
+            while (System.nanoTime() < warmup_end)
+                run_once(uc, workload);
+
+            long calls_before = counting.calls + syscalls.calls;
+            long allocated_before = allocated_bytes();
+            long start = System.nanoTime();
+            long end = start + (long) (seconds * 1e9);
+            long runs = 0;
+            long now;
+            do
+            {
+                run_once(uc, workload);
+                runs++;
+                now = System.nanoTime();
+            }
+            while (now < end);
+
+            Result result = new Result();
+            result.workload = workload.name;
+            result.hooks = hooks;
+            result.runs = runs;
+            result.instructions = runs * per_run;
+            result.upcalls = counting.calls + syscalls.calls - calls_before;
+            result.allocated = allocated_bytes() - allocated_before;
+            result.seconds = (now - start) / 1e9;
+            return result;
+        }
+        finally
+        {
+            if (profiler != null)
+                profiler.close();
+            uc.close();
+        }
+    }
+
+    static long allocated_bytes()
+    {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return -1;
+    }
+
+    static void write_json(Writer out, double seconds, List<Result> results)
+    {
+        PrintWriter json = new PrintWriter(out);
+        json.println("{");
+        json.printf(Locale.ROOT, "  \"timestamp\": %d,\n", System.currentTimeMillis());
+        json.printf(Locale.ROOT, "  \"java_version\": \"%s\",\n", System.getProperty("java.version"));
+        json.printf(Locale.ROOT, "  \"os_arch\": \"%s\",\n", System.getProperty("os.arch"));
+        json.printf(Locale.ROOT, "  \"seconds_per_result\": %.3f,\n", seconds);
+        json.println("  \"results\": [");
+        for (int i = 0; i < results.size(); i++)
+        {
+            Result r = results.get(i);
+            json.printf(Locale.ROOT, "    {\"workload\": \"%s\", \"hooks\": \"%s\", \"runs\": %d, \"instructions\": %d, \"upcalls\": %d, \"seconds\": %.6f, "
+                            + "\"instructions_per_second\": %.1f, \"upcalls_per_second\": %.1f, \"allocated_bytes_per_second\": %.1f, \"allocated_bytes_per_run\": %.1f}%s\n",
+                    r.workload, r.hooks, r.runs, r.instructions, r.upcalls, r.seconds,
+                    r.instructions / r.seconds, r.upcalls / r.seconds, r.allocated / r.seconds, (double) r.allocated / r.runs,
+                    i + 1 < results.size() ? "," : "");
+        }
+        json.println("  ]");
+        json.println("}");
+        json.flush();
+    }
+
+    // usage: java Throughput [seconds per result] [output.json]
+    public static void main(String args[]) throws IOException, UnicornException
+    {
+        System.loadLibrary("unicorn");
+
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 2;
+
+        List<Result> results = new ArrayList<>();
+        for (Workload workload : workloads())
+        {
+            for (String hooks : HOOKS)
+            {
+                Result r = measure(workload, hooks, seconds);
+                System.err.printf(">>> %s hooks=%s %.2f Minsn/s\n", r.workload, r.hooks, r.instructions / r.seconds / 1e6);
+                results.add(r);
+            }
+        }
+
+        if (args.length > 1)
+        {
+            try (Writer out = new FileWriter(args[1]))
+            {
+                write_json(out, seconds, results);
+            }
+        }
+        else
+        {
+            write_json(new PrintWriter(System.out), seconds, results);
+        }
+    }
+}
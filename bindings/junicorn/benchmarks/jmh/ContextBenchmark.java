@@ -0,0 +1,60 @@
+package jmh;
+
+import junicorn.Unicorn;
+import junicorn.UnicornContext;
+import junicorn.UnicornException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CPU context save and restore. {@code save_context} includes allocating the native context,
+ * {@code update_context} reuses one.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextBenchmark
+{
+    @Param({"X86_64", "ARM", "ARM64", "MIPS32"})
+    public Target target;
+
+    private Unicorn uc;
+    private UnicornContext context;
+
+    @Setup
+    public void setup() throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+        uc = target.open();
+        context = uc.save_context();
+    }
+
+    @TearDown
+    public void tearDown() throws UnicornException
+    {
+        context.close();
+        uc.close();
+    }
+
+    @Benchmark
+    public void save_context() throws UnicornException
+    {
+        uc.save_context().close();
+    }
+
+    @Benchmark
+    public void update_context() throws UnicornException
+    {
+        uc.update_context(context);
+    }
+
+    @Benchmark
+    public void restore_context() throws UnicornException
+    {
+        uc.restore_context(context);
+    }
+}
@@ -0,0 +1,54 @@
+package jmh;
+
+import junicorn.MemoryRegion;
+import junicorn.Unicorn;
+import junicorn.UnicornException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Engine lifecycle and memory map queries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineBenchmark
+{
+    private static final int REGIONS = 16;
+
+    @Param({"X86_64", "ARM", "ARM64", "MIPS32"})
+    public Target target;
+
+    private Unicorn uc;
+
+    @Setup
+    public void setup() throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+        uc = target.open();
+        for (int i = 1; i < REGIONS; i++)
+            uc.mem_map(Target.ADDRESS + (long) i * 2 * Target.MEMORY_SIZE, 4096, Unicorn.UC_PROT_READ);
+    }
+
+    @TearDown
+    public void tearDown() throws UnicornException
+    {
+        uc.close();
+    }
+
+    @Benchmark
+    public void open_close() throws UnicornException
+    {
+        new Unicorn(target.arch, target.mode).close();
+    }
+
+    @Benchmark
+    public MemoryRegion[] mem_regions() throws UnicornException
+    {
+        return uc.mem_regions();
+    }
+}
@@ -0,0 +1,114 @@
+package jmh;
+
+import junicorn.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Upcall cost per hook type. Each invocation runs an x86-32 loop of {@link #ITERATIONS} iterations
+ * whose body triggers the hooked event once, so the score is the time per loop iteration; subtract
+ * the {@code none} score to get the cost of the hook. {@code code_rejected} has a code hook whose
+ * {@link HookCondition} is always false and measures the native shim alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HookBenchmark
+{
+    public static final int ITERATIONS = 10000;
+    public static final int ADDRESS = 0x1000000;
+    public static final int DATA = 0x1100000;
+    public static final int PORT = 0x10;
+
+    @Param({"none", "code", "code_rejected", "block", "mem", "intr", "in", "out"})
+    public String hook;
+
+    private Unicorn uc;
+    private byte[] code;
+
+    @Setup
+    public void setup(Blackhole blackhole) throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+        uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.mem_map(ADDRESS, 2 * 1024 * 1024, Unicorn.UC_PROT_ALL);
+
+        byte[] body = new byte[0];
+        switch (hook)
+        {
+            case "code":
+            case "code_rejected":
+                CodeHook codeHook = (u, address, size, user_data) -> blackhole.consume(address);
+                uc.hook_add(Unicorn.UC_HOOK_CODE, codeHook, 1, 0, null);
+                if (hook.equals("code_rejected"))
+                    uc.hook_set_condition(codeHook, HookCondition.constant(0).ne(0));
+                break;
+            case "block":
+                uc.hook_add(Unicorn.UC_HOOK_BLOCK, (CodeHook) (u, address, size, user_data) -> blackhole.consume(address), 1, 0, null);
+                break;
+            case "mem":
+                // mov [DATA], ecx
+                body = new byte[] {(byte) 0x89, 0x0d, 0, 0, 0x10, 0x01};
+                uc.hook_add(Unicorn.UC_HOOK_MEM_WRITE, (MemoryAccessHook) (u, type, address, size, value, user_data) -> blackhole.consume(value), 1, 0, null);
+                break;
+            case "intr":
+                // int 0x80
+                body = new byte[] {(byte) 0xcd, (byte) 0x80};
+                uc.hook_add(Unicorn.UC_HOOK_INTR, (InterruptHook) (u, intno, user_data) -> blackhole.consume(intno), 1, 0, null);
+                break;
+            case "in":
+                // in al, dx
+                body = new byte[] {(byte) 0xec};
+                uc.hook_add(Unicorn.UC_HOOK_INSN, Unicorn.UC_X86_INS_IN, (InstructionInHook) (u, port, size, user_data) -> port, 1, 0, null);
+                break;
+            case "out":
+                // out dx, al
+                body = new byte[] {(byte) 0xee};
+                uc.hook_add(Unicorn.UC_HOOK_INSN, Unicorn.UC_X86_INS_OUT, (InstructionOutHook) (u, port, size, value, user_data) -> blackhole.consume(value), 1, 0, null);
+                break;
+        }
+
+        code = loop(body);
+        uc.mem_write(ADDRESS, code);
+    }
+
+    @TearDown
+    public void tearDown() throws UnicornException
+    {
+        uc.close();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITERATIONS)
+    public void run() throws UnicornException
+    {
+        uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+    }
+
+    // mov edx, PORT; mov ecx, ITERATIONS; loop: <body>; dec ecx; jnz loop
+    private static byte[] loop(byte[] body)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xba);
+        imm32(out, PORT);
+        out.write(0xb9);
+        imm32(out, ITERATIONS);
+        out.write(body, 0, body.length);
+        out.write(0x49);
+        out.write(0x75);
+        out.write(-(body.length + 3));
+        return out.toByteArray();
+    }
+
+    private static void imm32(ByteArrayOutputStream out, int value)
+    {
+        for (int i = 0; i < 4; i++)
+            out.write(value >>> (i * 8));
+    }
+}
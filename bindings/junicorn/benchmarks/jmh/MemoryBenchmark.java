@@ -0,0 +1,72 @@
+package jmh;
+
+import junicorn.Unicorn;
+import junicorn.UnicornException;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Guest memory access through JNI, with heap arrays and with direct buffers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MemoryBenchmark
+{
+    @Param({"X86_64", "ARM", "ARM64", "MIPS32"})
+    public Target target;
+
+    @Param({"8", "64", "4096", "65536"})
+    public int size;
+
+    private Unicorn uc;
+    private byte[] data;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+        uc = target.open();
+        data = new byte[size];
+        buffer = ByteBuffer.allocateDirect(size);
+    }
+
+    @TearDown
+    public void tearDown() throws UnicornException
+    {
+        uc.close();
+    }
+
+    @Benchmark
+    public byte[] mem_read() throws UnicornException
+    {
+        return uc.mem_read(Target.ADDRESS, size);
+    }
+
+    @Benchmark
+    public void mem_write() throws UnicornException
+    {
+        uc.mem_write(Target.ADDRESS, data);
+    }
+
+    @Benchmark
+    public ByteBuffer mem_read_buffer() throws UnicornException
+    {
+        buffer.clear();
+        uc.mem_read(Target.ADDRESS, buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public void mem_write_buffer() throws UnicornException
+    {
+        buffer.clear();
+        uc.mem_write(Target.ADDRESS, buffer);
+    }
+}
@@ -0,0 +1,50 @@
+package jmh;
+
+import junicorn.Unicorn;
+import junicorn.UnicornException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of a single register access through JNI.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterBenchmark
+{
+    @Param({"X86_64", "ARM", "ARM64", "MIPS32"})
+    public Target target;
+
+    private Unicorn uc;
+    private long value;
+
+    @Setup
+    public void setup() throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+        uc = target.open();
+    }
+
+    @TearDown
+    public void tearDown() throws UnicornException
+    {
+        uc.close();
+    }
+
+    @Benchmark
+    public long reg_read() throws UnicornException
+    {
+        return uc.reg_read(target.reg);
+    }
+
+    @Benchmark
+    public void reg_write() throws UnicornException
+    {
+        uc.reg_write(target.reg, value++);
+    }
+}
@@ -0,0 +1,39 @@
+package jmh;
+
+import junicorn.Unicorn;
+import junicorn.UnicornException;
+
+/**
+ * Architectures covered by the per-architecture benchmarks, with one general purpose register each.
+ */
+public enum Target
+{
+    X86_64(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_64, Unicorn.UC_X86_REG_RAX),
+    ARM(Unicorn.UC_ARCH_ARM, Unicorn.UC_MODE_ARM, Unicorn.UC_ARM_REG_R0),
+    ARM64(Unicorn.UC_ARCH_ARM64, Unicorn.UC_MODE_ARM, Unicorn.UC_ARM64_REG_X0),
+    MIPS32(Unicorn.UC_ARCH_MIPS, Unicorn.UC_MODE_MIPS32, Unicorn.UC_MIPS_REG_V0);
+
+    public static final long ADDRESS = 0x1000000;
+    public static final int MEMORY_SIZE = 2 * 1024 * 1024;
+
+    public final int arch;
+    public final int mode;
+    public final int reg;
+
+    Target(int arch, int mode, int reg)
+    {
+        this.arch = arch;
+        this.mode = mode;
+        this.reg = reg;
+    }
+
+    /**
+     * Opens an engine with {@link #MEMORY_SIZE} bytes of read/write memory at {@link #ADDRESS}.
+     */
+    public Unicorn open() throws UnicornException
+    {
+        Unicorn uc = new Unicorn(arch, mode);
+        uc.mem_map(ADDRESS, MEMORY_SIZE, Unicorn.UC_PROT_ALL);
+        return uc;
+    }
+}
@@ -0,0 +1,11 @@
+package junicorn;
+
+/**
+ * Code hook that can opt out of addresses it is not interested in. Returning false records the
+ * address (the block start for UC_HOOK_BLOCK) in a native set, and the hook is never called for it
+ * again until {@link Unicorn#hook_reset_suppressed} is called.
+ */
+public interface AdaptiveCodeHook extends Hook
+{
+    boolean hook(Unicorn uc, long address, int size, Object user_data);
+}
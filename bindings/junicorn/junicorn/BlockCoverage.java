@@ -0,0 +1,235 @@
+package junicorn;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongFunction;
+
+import static junicorn.UnicornNative.*;
+
+/**
+ * Native block coverage. A block hook records every distinct block address in a native hash set
+ * together with its size and hit count, without calling into Java. Coverage is kept across runs
+ * until {@link #reset()}; read it only while the engine is not running.
+ * <p>
+ * The exporters write drcov, as loaded by Lighthouse and other disassembler plugins, and lcov.
+ */
+public class BlockCoverage implements NativeCollector
+{
+    private final Unicorn uc;
+    private long coverage;
+
+    BlockCoverage(Unicorn uc, long engine) throws UnicornException
+    {
+        this.uc = uc;
+        this.coverage = juc_coverage_add(engine);
+        uc.collector_attach(this);
+    }
+
+    /**
+     * Removes the native hook and frees the coverage. Closing the engine closes its collectors.
+     */
+    @Override
+    @SuppressWarnings("WeakerAccess")
+    public void close() throws UnicornException
+    {
+        if (coverage != 0)
+        {
+            uc.coverage_del(coverage);
+            coverage = 0;
+            uc.collector_detach(this);
+        }
+    }
+
+    /**
+     * Distinct blocks executed since the last reset.
+     */
+    public long count()
+    {
+        return juc_coverage_count(handle());
+    }
+
+    /**
+     * Address, size and hit count of every covered block, three longs per block, sorted by address.
+     */
+    public long[] blocks()
+    {
+        long[] triples = juc_coverage_blocks(handle());
+        long[] addresses = new long[triples.length / 3];
+        for (int i = 0; i < addresses.length; i++)
+            addresses[i] = triples[i * 3];
+        Arrays.sort(addresses);
+
+        // the native set is unordered, reorder the triples by address
+        long[] sorted = new long[triples.length];
+        for (int i = 0; i < addresses.length; i++)
+        {
+            int at = Arrays.binarySearch(addresses, triples[i * 3]);
+            System.arraycopy(triples, i * 3, sorted, at * 3, 3);
+        }
+        return sorted;
+    }
+
+    /**
+     * True if blocks were lost because the native set could not grow.
+     */
+    public boolean overflow()
+    {
+        return juc_coverage_overflow(handle());
+    }
+
+    public void reset()
+    {
+        juc_coverage_reset(handle());
+    }
+
+    private long handle()
+    {
+        if (coverage == 0)
+            throw new IllegalStateException("block coverage is closed");
+        return coverage;
+    }
+
+    public void write_drcov(OutputStream out) throws IOException, UnicornException
+    {
+        write_drcov(out, begin -> String.format("region_0x%x", begin));
+    }
+
+    /**
+     * Writes the coverage as a drcov version 2 log. The module table is built from the mapped
+     * regions; adjacent regions that get the same name, e.g. the segments of one image split by
+     * {@code mem_protect}, are merged into one module. Blocks outside any mapped region are skipped.
+     *
+     * @param names module name for the region starting at the given address; Lighthouse matches it
+     *              against the name of the loaded binary
+     */
+    public void write_drcov(OutputStream out, LongFunction<String> names) throws IOException, UnicornException
+    {
+        List<long[]> modules = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        MemoryRegion[] regions = uc.mem_regions();
+        Arrays.sort(regions, (a, b) -> Long.compareUnsigned(a.begin, b.begin));
+        for (MemoryRegion region : regions)
+        {
+            String name = names.apply(region.begin);
+            int last = modules.size() - 1;
+            if (last >= 0 && modules.get(last)[1] == region.begin && paths.get(last).equals(name))
+                modules.get(last)[1] = region.end + 1;
+            else
+            {
+                modules.add(new long[]{region.begin, region.end + 1});
+                paths.add(name);
+            }
+        }
+
+        long[] blocks = blocks();
+        ByteBuffer table = ByteBuffer.allocate(blocks.length / 3 * 8).order(ByteOrder.LITTLE_ENDIAN);
+        int count = 0;
+        for (int i = 0; i < blocks.length; i += 3)
+        {
+            int id = module_of(modules, blocks[i]);
+            if (id < 0 || blocks[i] - modules.get(id)[0] > 0xffffffffL)
+                continue;
+
+            // bb_entry_t: uint32 start offset, uint16 size, uint16 module id
+            table.putInt((int) (blocks[i] - modules.get(id)[0]));
+            table.putShort((short) Math.min(blocks[i + 1], 0xffff));
+            table.putShort((short) id);
+            count++;
+        }
+
+        StringBuilder header = new StringBuilder();
+        header.append("DRCOV VERSION: 2\n");
+        header.append("DRCOV FLAVOR: drcov\n");
+        header.append("Module Table: version 2, count ").append(modules.size()).append('\n');
+        header.append("Columns: id, base, end, entry, checksum, timestamp, path\n");
+        for (int id = 0; id < modules.size(); id++)
+        {
+            long[] module = modules.get(id);
+            header.append(String.format(" %d, 0x%016x, 0x%016x, 0x%016x, 0x%08x, 0x%08x, %s\n",
+                    id, module[0], module[1], 0L, 0, 0, paths.get(id)));
+        }
+        header.append("BB Table: ").append(count).append(" bbs\n");
+
+        out.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        out.write(table.array(), 0, table.position());
+        out.flush();
+    }
+
+    private static int module_of(List<long[]> modules, long address)
+    {
+        for (int id = 0; id < modules.size(); id++)
+        {
+            long[] module = modules.get(id);
+            if (Long.compareUnsigned(address, module[0]) >= 0 && Long.compareUnsigned(address, module[1]) < 0)
+                return id;
+        }
+        return -1;
+    }
+
+    public void write_lcov(Writer out) throws IOException, UnicornException
+    {
+        MemoryRegion[] regions = uc.mem_regions();
+        write_lcov(out, address ->
+        {
+            for (MemoryRegion region : regions)
+            {
+                if (Long.compareUnsigned(address, region.begin) >= 0 && Long.compareUnsigned(address, region.end) <= 0)
+                    return String.format("region_0x%x:%d", region.begin, address - region.begin + 1);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Writes the coverage as an lcov tracefile, with the hit count of each block as the count of
+     * its line. Without a line table every region is a pseudo source file whose line numbers are
+     * block offsets plus one.
+     *
+     * @param lines {@code file:line} of a block address, e.g. from addr2line, or null to skip the block
+     */
+    public void write_lcov(Writer out, LongFunction<String> lines) throws IOException
+    {
+        TreeMap<String, TreeMap<Long, Long>> files = new TreeMap<>();
+        long[] blocks = blocks();
+        for (int i = 0; i < blocks.length; i += 3)
+        {
+            String location = lines.apply(blocks[i]);
+            int colon = location != null ? location.lastIndexOf(':') : -1;
+            if (colon <= 0)
+                continue;
+
+            long line;
+            try
+            {
+                line = Long.parseLong(location.substring(colon + 1));
+            }
+            catch (NumberFormatException e)
+            {
+                continue;
+            }
+            files.computeIfAbsent(location.substring(0, colon), k -> new TreeMap<>())
+                    .merge(line, blocks[i + 2], Long::sum);
+        }
+
+        out.write("TN:\n");
+        for (Map.Entry<String, TreeMap<Long, Long>> file : files.entrySet())
+        {
+            out.write("SF:" + file.getKey() + "\n");
+            for (Map.Entry<Long, Long> line : file.getValue().entrySet())
+                out.write("DA:" + line.getKey() + "," + line.getValue() + "\n");
+            out.write("LF:" + file.getValue().size() + "\n");
+            out.write("LH:" + file.getValue().size() + "\n");
+            out.write("end_of_record\n");
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,16 @@
+package junicorn;
+
+/**
+ * {@link HookMultiplexer} for UC_HOOK_CODE and UC_HOOK_BLOCK listeners.
+ */
+public class CodeHookMultiplexer extends HookMultiplexer<CodeHook> implements CodeHook
+{
+    @Override
+    public void hook(Unicorn uc, long address, int size, Object user_data)
+    {
+        Listeners current = listeners;
+        Hook[] hooks = current.hooks;
+        for (int i = 0; i < hooks.length; i++)
+            ((CodeHook) hooks[i]).hook(uc, address, size, current.user_data[i]);
+    }
+}
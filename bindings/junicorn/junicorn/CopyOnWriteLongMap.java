@@ -0,0 +1,125 @@
+package junicorn;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Map from primitive long keys to values for read-mostly tables on the upcall path.
+ * <p>
+ * The table is an open addressing array that is copied on every change and published through a
+ * volatile field, so {@link #get(long)} takes no lock, never allocates (no boxed keys) and always
+ * sees a consistent table. Writers are serialized on the map and pay O(size) per change.
+ */
+class CopyOnWriteLongMap<V>
+{
+    private static final Table EMPTY = new Table(new long[1], new Object[1], 0);
+
+    private volatile Table table = EMPTY;
+
+    private static class Table
+    {
+        final long[] keys;
+        final Object[] values;
+        final int count;
+
+        Table(long[] keys, Object[] values, int count)
+        {
+            this.keys = keys;
+            this.values = values;
+            this.count = count;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(long key)
+    {
+        Table t = table;
+        int mask = t.keys.length - 1;
+        for (int i = slot(key, mask); t.values[i] != null; i = (i + 1) & mask)
+        {
+            if (t.keys[i] == key)
+                return (V) t.values[i];
+        }
+        return null;
+    }
+
+    synchronized void put(long key, V value)
+    {
+        if (value == null)
+            throw new NullPointerException();
+        table = rebuild(table, key, value);
+    }
+
+    synchronized void remove(long key)
+    {
+        if (get(key) != null)
+            table = rebuild(table, key, null);
+    }
+
+    synchronized void clear()
+    {
+        table = EMPTY;
+    }
+
+    int size()
+    {
+        return table.count;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<V> values()
+    {
+        Table t = table;
+        List<V> values = new ArrayList<>(t.count);
+        for (Object value : t.values)
+        {
+            if (value != null)
+                values.add((V) value);
+        }
+        return values;
+    }
+
+    // copy of old without key, plus key -> value unless value is null
+    private static Table rebuild(Table old, long key, Object value)
+    {
+        int count = 0;
+        for (int i = 0; i < old.keys.length; i++)
+        {
+            if (old.values[i] != null && old.keys[i] != key)
+                count++;
+        }
+        if (value != null)
+            count++;
+
+        int capacity = 2;
+        while (capacity < count * 2)
+            capacity <<= 1;
+
+        long[] keys = new long[capacity];
+        Object[] values = new Object[capacity];
+        for (int i = 0; i < old.keys.length; i++)
+        {
+            if (old.values[i] != null && old.keys[i] != key)
+                insert(keys, values, old.keys[i], old.values[i]);
+        }
+        if (value != null)
+            insert(keys, values, key, value);
+
+        return new Table(keys, values, count);
+    }
+
+    private static void insert(long[] keys, Object[] values, long key, Object value)
+    {
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null)
+            i = (i + 1) & mask;
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    private static int slot(long key, int mask)
+    {
+        return (int) ((key * 0x9e3779b97f4a7c15L) >>> 40) & mask;
+    }
+}
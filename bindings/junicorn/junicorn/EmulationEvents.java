@@ -0,0 +1,149 @@
+package junicorn;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder events emitted by the binding. They cost next to nothing while no recording
+ * has them enabled. Hook dispatches are sampled, one in {@link #HOOK_SAMPLE_INTERVAL} upcalls per
+ * engine is recorded; set {@code -Djunicorn.jfr.hookSampleInterval=1} to record all of them.
+ */
+final class EmulationEvents
+{
+    static final int HOOK_SAMPLE_INTERVAL = Math.max(1, Integer.getInteger("junicorn.jfr.hookSampleInterval", 64));
+
+    // probes used to ask whether an event type is enabled without creating an event
+    static final HookDispatch HOOK_DISPATCH = new HookDispatch();
+
+    private EmulationEvents()
+    {
+    }
+
+    @Name("junicorn.EmulationRun")
+    @Label("Emulation Run")
+    @Category("Unicorn")
+    static class EmulationRun extends Event
+    {
+        @Label("Arch")
+        int arch;
+
+        @Label("Begin")
+        long begin;
+
+        @Label("Until")
+        long until;
+
+        @Label("Timeout")
+        @Timespan(Timespan.MICROSECONDS)
+        long timeout;
+
+        @Label("Count")
+        long count;
+
+        @Label("Stop Reason")
+        @Description("StopReason of the run, ERROR if uc_emu_start failed")
+        String reason;
+
+        @Label("Errno")
+        int errno;
+    }
+
+    @Name("junicorn.HookDispatch")
+    @Label("Hook Dispatch")
+    @Description("Sampled upcall, the duration is the time spent in the Java hook")
+    @Category("Unicorn")
+    @StackTrace(false)
+    static class HookDispatch extends Event
+    {
+        @Label("Hook Type")
+        @Description("UC_HOOK_* mask the hook was added with")
+        int hookType;
+
+        @Label("Hook Class")
+        String hookClass;
+
+        @Label("Hook Id")
+        long hookId;
+
+        @Label("First Argument")
+        @Description("Address for code and memory hooks, interrupt number or port otherwise")
+        long arg1;
+    }
+
+    @Name("junicorn.EngineOpen")
+    @Label("Engine Open")
+    @Category("Unicorn")
+    static class EngineOpen extends Event
+    {
+        @Label("Arch")
+        int arch;
+
+        @Label("Mode")
+        int mode;
+    }
+
+    @Name("junicorn.EngineClose")
+    @Label("Engine Close")
+    @Category("Unicorn")
+    static class EngineClose extends Event
+    {
+        @Label("Arch")
+        int arch;
+
+        @Label("Mode")
+        int mode;
+
+        @Label("Hooks")
+        int hooks;
+    }
+
+    @Name("junicorn.ContextSave")
+    @Label("Context Save")
+    @Category("Unicorn")
+    @StackTrace(false)
+    static class ContextSave extends Event
+    {
+        @Label("Arch")
+        int arch;
+
+        @Label("Size")
+        int size;
+    }
+
+    @Name("junicorn.ContextRestore")
+    @Label("Context Restore")
+    @Category("Unicorn")
+    @StackTrace(false)
+    static class ContextRestore extends Event
+    {
+        @Label("Arch")
+        int arch;
+
+        @Label("Size")
+        int size;
+    }
+
+    @Name("junicorn.MemMap")
+    @Label("Memory Map")
+    @Category("Unicorn")
+    static class MemMap extends Event
+    {
+        @Label("Kind")
+        @Description("map, map_ptr or map_buffer")
+        String kind;
+
+        @Label("Address")
+        long address;
+
+        @Label("Size")
+        long size;
+
+        @Label("Permissions")
+        int perms;
+    }
+}
@@ -0,0 +1,222 @@
+package junicorn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+
+/**
+ * Runs an {@link EmulationJob} over many inputs on a fork-join pool.
+ * <p>
+ * Every worker thread lazily opens its own engine from the {@link EngineFactory} and keeps it for
+ * its whole life, so engines are thread confined and jobs never contend on a shared engine.
+ * Inputs are split recursively and idle workers steal the remaining shards.
+ */
+public class EmulationExecutor<I, O> implements Closeable
+{
+    private static final int SHARDS_PER_WORKER = 8;
+
+    private final EngineFactory factory;
+    private final EmulationJob<I, O> job;
+    private final ForkJoinPool pool;
+
+    public EmulationExecutor(EngineFactory factory, EmulationJob<I, O> job)
+    {
+        this(factory, job, Runtime.getRuntime().availableProcessors());
+    }
+
+    public EmulationExecutor(EngineFactory factory, EmulationJob<I, O> job, int parallelism)
+    {
+        this(factory, job, parallelism, null);
+    }
+
+    /**
+     * @param handler receives failures to close a worker's engine when the worker terminates; null
+     *                reports them through the worker thread's default uncaught-exception handling
+     */
+    public EmulationExecutor(EngineFactory factory, EmulationJob<I, O> job, int parallelism, Thread.UncaughtExceptionHandler handler)
+    {
+        this.factory = factory;
+        this.job = job;
+        this.pool = new ForkJoinPool(parallelism, Worker::new, handler, false);
+    }
+
+    public int parallelism()
+    {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Runs the job for every input and returns the outputs in input order.
+     */
+    public List<O> map(List<I> inputs) throws IOException, UnicornException
+    {
+        Object[] outputs = new Object[inputs.size()];
+        reduce(inputs, null, (ignored, output) -> null, (a, b) -> null, outputs);
+
+        List<O> result = new ArrayList<>(outputs.length);
+        for (Object output : outputs)
+        {
+            @SuppressWarnings("unchecked")
+            O value = (O) output;
+            result.add(value);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the job for every input and folds the outputs. Each shard accumulates from
+     * {@code identity}, shards are then merged with {@code combiner}.
+     */
+    public <A> A reduce(List<I> inputs, A identity, BiFunction<A, O, A> accumulator, BinaryOperator<A> combiner) throws IOException, UnicornException
+    {
+        return reduce(inputs, identity, accumulator, combiner, null);
+    }
+
+    private <A> A reduce(List<I> inputs, A identity, BiFunction<A, O, A> accumulator, BinaryOperator<A> combiner, Object[] outputs) throws IOException, UnicornException
+    {
+        if (inputs.isEmpty())
+            return identity;
+
+        int threshold = Math.max(1, inputs.size() / (pool.getParallelism() * SHARDS_PER_WORKER));
+        Shard<A> root = new Shard<>(inputs, 0, inputs.size(), threshold, identity, accumulator, combiner, outputs);
+        try
+        {
+            return pool.invoke(root);
+        }
+        catch (CompletionException e)
+        {
+            // the pool may rethrow a copy of the worker's exception wrapping the original
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException)
+                cause = cause.getCause();
+            if (cause instanceof UnicornException)
+                throw (UnicornException) cause;
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Shuts the pool down; every worker closes its engine on its own thread.
+     */
+    @Override
+    public void close()
+    {
+        pool.shutdown();
+        try
+        {
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private O execute(I input)
+    {
+        Worker worker = (Worker) Thread.currentThread();
+        try
+        {
+            if (worker.engine == null)
+                worker.engine = factory.newEngine();
+            return job.run(worker.engine, input);
+        }
+        catch (IOException | UnicornException e)
+        {
+            throw new CompletionException(e);
+        }
+    }
+
+    private class Shard<A> extends RecursiveTask<A>
+    {
+        private static final long serialVersionUID = 1L;
+
+        private final List<I> inputs;
+        private final int begin;
+        private final int end;
+        private final int threshold;
+        private final A identity;
+        private final BiFunction<A, O, A> accumulator;
+        private final BinaryOperator<A> combiner;
+        private final Object[] outputs;
+
+        Shard(List<I> inputs, int begin, int end, int threshold, A identity, BiFunction<A, O, A> accumulator, BinaryOperator<A> combiner, Object[] outputs)
+        {
+            this.inputs = inputs;
+            this.begin = begin;
+            this.end = end;
+            this.threshold = threshold;
+            this.identity = identity;
+            this.accumulator = accumulator;
+            this.combiner = combiner;
+            this.outputs = outputs;
+        }
+
+        @Override
+        protected A compute()
+        {
+            if (end - begin > threshold)
+            {
+                int middle = (begin + end) >>> 1;
+                Shard<A> left = new Shard<>(inputs, begin, middle, threshold, identity, accumulator, combiner, outputs);
+                Shard<A> right = new Shard<>(inputs, middle, end, threshold, identity, accumulator, combiner, outputs);
+                left.fork();
+                A b = right.compute();
+                A a = left.join();
+                return combiner.apply(a, b);
+            }
+
+            A result = identity;
+            for (int i = begin; i < end; i++)
+            {
+                O output = execute(inputs.get(i));
+                if (outputs != null)
+                    outputs[i] = output;
+                result = accumulator.apply(result, output);
+            }
+            return result;
+        }
+    }
+
+    private static class Worker extends ForkJoinWorkerThread
+    {
+        Unicorn engine;
+
+        Worker(ForkJoinPool pool)
+        {
+            super(pool);
+            setName("junicorn-worker-" + getPoolIndex());
+        }
+
+        @Override
+        protected void onTermination(Throwable exception)
+        {
+            if (engine != null)
+            {
+                try
+                {
+                    engine.close();
+                }
+                catch (UnicornException e)
+                {
+                    Thread.UncaughtExceptionHandler handler = getPool().getUncaughtExceptionHandler();
+                    if (handler == null)
+                        handler = getUncaughtExceptionHandler();
+                    handler.uncaughtException(this, e);
+                }
+                engine = null;
+            }
+            super.onTermination(exception);
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package junicorn;
+
+public interface EmulationJob<I, O>
+{
+    /**
+     * Runs one input on an engine owned by the calling worker: write the input, {@code emu_start},
+     * collect the outputs. The engine is reused for the next job on the same worker.
+     */
+    O run(Unicorn uc, I input) throws UnicornException;
+}
@@ -0,0 +1,235 @@
+package junicorn;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Time-slices many engines over a few threads.
+ * <p>
+ * Each submitted guest runs for at most {@code quantum} instructions (the {@code count} argument
+ * of {@code emu_start}), then its PC is saved and it goes to the back of a shared FIFO queue, so
+ * every guest waits at most one round of the other guests' quanta. A guest finishes when it
+ * reaches {@code until}, when a hook stops it with {@link Unicorn#emu_stop()}, when a breakpoint
+ * is hit or when its {@link Watchdog} trips; the watchdog budget covers the whole run, not a single
+ * quantum. A stop requested natively, e.g. by a stopping watchpoint, only ends the slice.
+ * <p>
+ * The quantum is enforced by unicorn's own instruction count, no instructions are counted on top
+ * of it, so {@link RunResult#instructions} is -1.
+ */
+public class EmulationScheduler implements Closeable
+{
+    private final long quantum;
+    private final Thread[] threads;
+    private final LinkedBlockingQueue<Guest> queue = new LinkedBlockingQueue<>();
+    private final LongAdder slices = new LongAdder();
+    private final Object lock = new Object();
+
+    private volatile boolean closed;
+
+    public EmulationScheduler(int threads, long quantum)
+    {
+        if (threads <= 0 || quantum <= 0)
+            throw new IllegalArgumentException();
+
+        this.quantum = quantum;
+        this.threads = new Thread[threads];
+        for (int i = 0; i < threads; i++)
+        {
+            Thread thread = new Thread(this::loop, "junicorn-sched-" + i);
+            thread.setDaemon(true);
+            this.threads[i] = thread;
+            thread.start();
+        }
+    }
+
+    /**
+     * Schedules {@code uc} to run from {@code begin} until {@code until}. The engine must not be
+     * used elsewhere until the future completes; cancelling the future stops and drops the guest.
+     */
+    public CompletableFuture<RunResult> submit(Unicorn uc, long begin, long until) throws UnicornException
+    {
+        synchronized (lock)
+        {
+            if (closed)
+                throw new IllegalStateException("scheduler is closed");
+
+            Guest guest = new Guest(uc, begin, until);
+            Watchdog watchdog = uc.watchdog_get();
+            if (watchdog != null)
+                watchdog.reset();
+
+            guest.future.whenComplete((result, error) ->
+            {
+                if (guest.future.isCancelled())
+                    guest.stop();
+            });
+            queue.add(guest);
+            return guest.future;
+        }
+    }
+
+    public int getQueuedCount()
+    {
+        return queue.size();
+    }
+
+    public long getSliceCount()
+    {
+        return slices.sum();
+    }
+
+    private void loop()
+    {
+        while (!closed)
+        {
+            Guest guest;
+            try
+            {
+                guest = queue.take();
+            }
+            catch (InterruptedException e)
+            {
+                break;
+            }
+
+            try
+            {
+                if (slice(guest))
+                    queue.add(guest);
+            }
+            catch (Throwable e)
+            {
+                guest.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Runs one quantum, returns true if the guest should be queued again.
+     */
+    private boolean slice(Guest guest) throws UnicornException
+    {
+        synchronized (guest)
+        {
+            if (guest.future.isDone())
+                return false;
+            guest.slicing = true;
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            guest.uc.emu_continue(guest.pc, guest.until, 0, quantum);
+        }
+        finally
+        {
+            synchronized (guest)
+            {
+                guest.slicing = false;
+            }
+        }
+        guest.elapsed += System.nanoTime() - start;
+        slices.increment();
+        guest.pc = guest.uc.pc_resume();
+
+        StopReason reason = stop_reason(guest);
+        if (reason == null)
+            return !guest.future.isDone();
+
+        guest.future.complete(new RunResult(reason, guest.pc, -1, guest.elapsed));
+        return false;
+    }
+
+    /**
+     * Why the guest stopped before the end of its quantum, or null if the quantum simply ran out.
+     */
+    private StopReason stop_reason(Guest guest)
+    {
+        StopReason reason = guest.uc.watchdog_reason();
+        if (reason != null)
+            return reason;
+        if (guest.uc.breakpoint_hit())
+            return StopReason.BREAKPOINT;
+        if ((guest.pc & ~1L) == (guest.until & ~1L))
+            return StopReason.UNTIL;
+        if (guest.uc.stop_requested())
+            return StopReason.STOPPED;
+        return null;
+    }
+
+    /**
+     * Stops the scheduler threads and waits for them. Guests still queued, including one whose slice
+     * was running, are cancelled; later submits are rejected.
+     */
+    @Override
+    public void close()
+    {
+        synchronized (lock)
+        {
+            closed = true;
+        }
+        for (Thread thread : threads)
+            thread.interrupt();
+
+        boolean interrupted = false;
+        for (Thread thread : threads)
+        {
+            while (thread.isAlive())
+            {
+                try
+                {
+                    thread.join();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+
+        Guest guest;
+        while ((guest = queue.poll()) != null)
+            guest.future.cancel(false);
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private static class Guest
+    {
+        final Unicorn uc;
+        final long until;
+        final CompletableFuture<RunResult> future = new CompletableFuture<>();
+
+        long pc;
+        long elapsed;
+        private boolean slicing;
+
+        Guest(Unicorn uc, long begin, long until)
+        {
+            this.uc = uc;
+            this.pc = begin;
+            this.until = until;
+        }
+
+        /**
+         * Ends the running slice early. A cancel that lands just before the slice enters native
+         * code is missed, the slice then runs out its quantum and the guest is dropped after it.
+         */
+        synchronized void stop()
+        {
+            if (!slicing)
+                return;
+            try
+            {
+                uc.emu_stop();
+            }
+            catch (UnicornException ignored)
+            {
+                // the slice still ends with its quantum
+            }
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package junicorn;
+
+import java.io.IOException;
+
+public interface EngineFactory
+{
+    Unicorn newEngine() throws IOException, UnicornException;
+}
@@ -0,0 +1,345 @@
+package junicorn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static junicorn.UnicornConst.*;
+
+/**
+ * Fixed set of warm engines that all start from the same {@link MachineSnapshot}.
+ * <p>
+ * Released engines are reset to the template before they are handed out again: registers come back
+ * from a per-engine {@link UnicornContext} and writable regions are copied back from the snapshot,
+ * so translated code in read-only regions stays cached. If the borrower changed the memory map the
+ * whole snapshot is restored instead. Hooks added by a borrower are not removed by the pool.
+ * <p>
+ * There is no dirty tracking: every release rewrites all writable regions in full, so a reset
+ * costs time proportional to the writable memory of the template, not to what the borrower touched.
+ * Keep large scratch regions out of the template, or map them read-only, when resets must be cheap.
+ */
+public class EnginePool implements Closeable
+{
+    private final MachineSnapshot template;
+    private final MemoryRegion[] regions;
+    private final ByteBuffer[] contents;
+    private final IdentityHashMap<Unicorn, UnicornContext> engines = new IdentityHashMap<>();
+    private final Set<Unicorn> borrowed = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final ArrayBlockingQueue<Unicorn> idle;
+
+    private final long created = System.nanoTime();
+    private final LongAdder borrowCount = new LongAdder();
+    private final LongAdder borrowNanos = new LongAdder();
+    private final AtomicLong borrowMaxNanos = new AtomicLong();
+    private final LongAdder resetCount = new LongAdder();
+    private final LongAdder resetNanos = new LongAdder();
+
+    // guarded by engines, so that a release cannot add to the idle queue after close drained it
+    private boolean closed;
+
+    public EnginePool(MachineSnapshot template, int size) throws IOException, UnicornException
+    {
+        if (size <= 0)
+            throw new IllegalArgumentException("size must be positive");
+
+        this.template = template;
+        this.regions = template.regions();
+        this.contents = new ByteBuffer[regions.length];
+        for (int i = 0; i < regions.length; i++)
+        {
+            if ((regions[i].perms & UC_PROT_WRITE) != 0)
+                contents[i] = template.contents(i);
+        }
+
+        this.idle = new ArrayBlockingQueue<>(size);
+        try
+        {
+            for (int i = 0; i < size; i++)
+            {
+                Unicorn uc = template.newEngine();
+                engines.put(uc, uc.save_context());
+                idle.add(uc);
+            }
+        }
+        catch (IOException | UnicornException | RuntimeException e)
+        {
+            try
+            {
+                close();
+            }
+            catch (IOException suppressed)
+            {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Takes an engine, waiting until one is released if the pool is exhausted.
+     */
+    public Unicorn borrow() throws InterruptedException
+    {
+        long start = System.nanoTime();
+        Unicorn uc = idle.take();
+        borrowed(uc, start);
+        return uc;
+    }
+
+    /**
+     * Takes an engine, or returns null if none was released within the timeout.
+     */
+    public Unicorn borrow(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        long start = System.nanoTime();
+        Unicorn uc = idle.poll(timeout, unit);
+        if (uc != null)
+            borrowed(uc, start);
+        return uc;
+    }
+
+    /**
+     * Resets {@code uc} to the template and makes it available again. If the reset fails the engine
+     * is closed and replaced by a fresh one from the template, so the pool keeps its capacity.
+     */
+    public void release(Unicorn uc) throws IOException, UnicornException
+    {
+        UnicornContext context;
+        synchronized (engines)
+        {
+            context = engines.get(uc);
+            if (context == null)
+                throw new IllegalArgumentException("engine does not belong to this pool");
+            if (!borrowed.remove(uc))
+                throw new IllegalStateException("engine is not borrowed");
+        }
+
+        long start = System.nanoTime();
+        try
+        {
+            reset(uc, context);
+        }
+        catch (IOException | UnicornException | RuntimeException e)
+        {
+            replace(uc, e);
+            throw e;
+        }
+        resetNanos.add(System.nanoTime() - start);
+        resetCount.increment();
+
+        synchronized (engines)
+        {
+            if (!closed)
+            {
+                idle.add(uc);
+                return;
+            }
+        }
+        dispose(uc);
+    }
+
+    // disposes an engine that failed to reset and adds a new one in its place
+    private void replace(Unicorn uc, Exception cause)
+    {
+        try
+        {
+            dispose(uc);
+        }
+        catch (UnicornException e)
+        {
+            cause.addSuppressed(e);
+        }
+
+        Unicorn fresh;
+        try
+        {
+            fresh = template.newEngine();
+        }
+        catch (IOException | UnicornException | RuntimeException e)
+        {
+            cause.addSuppressed(e);
+            return;
+        }
+
+        try
+        {
+            UnicornContext context = fresh.save_context();
+            synchronized (engines)
+            {
+                engines.put(fresh, context);
+                if (!closed)
+                {
+                    idle.add(fresh);
+                    return;
+                }
+            }
+        }
+        catch (UnicornException | RuntimeException e)
+        {
+            cause.addSuppressed(e);
+        }
+
+        // the pool was closed meanwhile, or the new engine could not be prepared
+        try
+        {
+            dispose(fresh);
+        }
+        catch (UnicornException e)
+        {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private void reset(Unicorn uc, UnicornContext context) throws IOException, UnicornException
+    {
+        if (!same_layout(uc.mem_regions()))
+        {
+            template.restore(uc);
+        }
+        else
+        {
+            for (int i = 0; i < regions.length; i++)
+            {
+                if (contents[i] != null)
+                    uc.mem_write(regions[i].begin, contents[i].duplicate());
+            }
+        }
+
+        uc.restore_context(context);
+    }
+
+    private boolean same_layout(MemoryRegion[] current)
+    {
+        if (current.length != regions.length)
+            return false;
+
+        for (int i = 0; i < regions.length; i++)
+        {
+            if (current[i].begin != regions[i].begin || current[i].end != regions[i].end || current[i].perms != regions[i].perms)
+                return false;
+        }
+
+        return true;
+    }
+
+    private void borrowed(Unicorn uc, long start)
+    {
+        synchronized (engines)
+        {
+            borrowed.add(uc);
+        }
+        long elapsed = System.nanoTime() - start;
+        borrowCount.increment();
+        borrowNanos.add(elapsed);
+        borrowMaxNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    public int size()
+    {
+        synchronized (engines)
+        {
+            return engines.size();
+        }
+    }
+
+    public int getIdleCount()
+    {
+        return idle.size();
+    }
+
+    public long getBorrowCount()
+    {
+        return borrowCount.sum();
+    }
+
+    public double getBorrowLatencyAverageNanos()
+    {
+        long count = borrowCount.sum();
+        return count == 0 ? 0 : (double) borrowNanos.sum() / count;
+    }
+
+    public long getBorrowLatencyMaxNanos()
+    {
+        return borrowMaxNanos.get();
+    }
+
+    public long getResetCount()
+    {
+        return resetCount.sum();
+    }
+
+    public double getResetLatencyAverageNanos()
+    {
+        long count = resetCount.sum();
+        return count == 0 ? 0 : (double) resetNanos.sum() / count;
+    }
+
+    /**
+     * Average reset rate since the pool was created.
+     */
+    public double getResetsPerSecond()
+    {
+        double seconds = (System.nanoTime() - created) / 1e9;
+        return seconds <= 0 ? 0 : resetCount.sum() / seconds;
+    }
+
+    /**
+     * Closes idle engines immediately; engines still borrowed are closed when released. All idle
+     * engines are closed even if some fail, the first failure is thrown.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        List<Unicorn> drained = new ArrayList<>();
+        synchronized (engines)
+        {
+            closed = true;
+            idle.drainTo(drained);
+        }
+        IOException failure = null;
+        for (Unicorn uc : drained)
+        {
+            try
+            {
+                dispose(uc);
+            }
+            catch (UnicornException e)
+            {
+                if (failure == null)
+                    failure = new IOException("closing a pooled engine failed", e);
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private void dispose(Unicorn uc) throws UnicornException
+    {
+        UnicornContext context;
+        synchronized (engines)
+        {
+            context = engines.remove(uc);
+        }
+
+        try
+        {
+            if (context != null)
+                context.close();
+        }
+        finally
+        {
+            uc.close();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package junicorn;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Point-in-time figures for one engine, as exposed by {@link UnicornStatsMXBean#getEngines()}.
+ */
+public class EngineStats
+{
+    private final long engine;
+    private final int arch;
+    private final int mode;
+    private final boolean running;
+    private final long runs;
+    private final long emulationNanos;
+    private final long mappedBytes;
+    private final int regionCount;
+    private final Map<String, Integer> hookCounts;
+    private final long upcalls;
+
+    EngineStats(long engine, int arch, int mode, boolean running, long runs, long emulationNanos, long mappedBytes, int regionCount, HookRecord[] hooks, long upcalls)
+    {
+        this.engine = engine;
+        this.arch = arch;
+        this.mode = mode;
+        this.running = running;
+        this.runs = runs;
+        this.emulationNanos = emulationNanos;
+        this.mappedBytes = mappedBytes;
+        this.regionCount = regionCount;
+        this.upcalls = upcalls;
+
+        this.hookCounts = new TreeMap<>();
+        for (HookRecord hook : hooks)
+            hookCounts.merge(UnicornStats.hook_type_name(hook.type), 1, Integer::sum);
+    }
+
+    /**
+     * Native engine handle in hex, stable for the life of the engine.
+     */
+    public String getEngine()
+    {
+        return Long.toHexString(engine);
+    }
+
+    public int getArch()
+    {
+        return arch;
+    }
+
+    public int getMode()
+    {
+        return mode;
+    }
+
+    public boolean isRunning()
+    {
+        return running;
+    }
+
+    public long getRuns()
+    {
+        return runs;
+    }
+
+    public long getEmulationNanos()
+    {
+        return emulationNanos;
+    }
+
+    /**
+     * Mapped memory as of the engine's last mem_map, mem_unmap or mem_protect.
+     */
+    public long getMappedBytes()
+    {
+        return mappedBytes;
+    }
+
+    /**
+     * Mapped regions, counted at the same points as {@link #getMappedBytes()}.
+     */
+    public int getRegionCount()
+    {
+        return regionCount;
+    }
+
+    /**
+     * Live hooks keyed by their UC_HOOK_* type, e.g. {@code CODE} or {@code MEM_READ|MEM_WRITE}.
+     */
+    public Map<String, Integer> getHookCounts()
+    {
+        return hookCounts;
+    }
+
+    public int getHookCount()
+    {
+        int count = 0;
+        for (int n : hookCounts.values())
+            count += n;
+        return count;
+    }
+
+    /**
+     * Upcalls into Java since the engine was opened, including hooks deleted since.
+     */
+    public long getUpcalls()
+    {
+        return upcalls;
+    }
+}
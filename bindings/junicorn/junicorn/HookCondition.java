@@ -0,0 +1,308 @@
+package junicorn;
+
+import java.io.ByteArrayOutputStream;
+import java.util.function.IntPredicate;
+
+/**
+ * Expression over registers, guest memory and hook arguments, compiled to a small stack bytecode
+ * that the native hook shim evaluates before calling into Java. A hook with a condition only
+ * reaches Java when the condition is non-zero.
+ * <p>
+ * For example, "RCX > 0x100 and [RSP+8] == 0" is
+ * <pre>
+ * HookCondition.reg(UC_X86_REG_RCX).gt(0x100)
+ *         .and(HookCondition.mem(UC_X86_REG_RSP, 8, 8).eq(0))
+ * </pre>
+ * Arithmetic wraps at 64 bits and comparisons are unsigned unless named {@code s*}. Memory loads
+ * read 1, 2, 4 or 8 bytes in guest byte order; a load from unmapped memory makes the whole
+ * condition false. Both sides of {@code and}/{@code or} are always evaluated.
+ * <p>
+ * Hook arguments are, in order: address and size for code hooks; type, address, size and value
+ * for memory hooks; the interrupt number for interrupt hooks; port, size and value for in/out hooks.
+ */
+public class HookCondition
+{
+    static final int OP_CONST = 0x01;
+    static final int OP_REG = 0x02;
+    static final int OP_ARG = 0x03;
+    static final int OP_LOAD = 0x04;
+    static final int OP_ADD = 0x10;
+    static final int OP_SUB = 0x11;
+    static final int OP_AND = 0x12;
+    static final int OP_OR = 0x13;
+    static final int OP_XOR = 0x14;
+    static final int OP_SHL = 0x15;
+    static final int OP_SHR = 0x16;
+    static final int OP_EQ = 0x20;
+    static final int OP_NE = 0x21;
+    static final int OP_LTU = 0x22;
+    static final int OP_LEU = 0x23;
+    static final int OP_GTU = 0x24;
+    static final int OP_GEU = 0x25;
+    static final int OP_LTS = 0x26;
+    static final int OP_LES = 0x27;
+    static final int OP_GTS = 0x28;
+    static final int OP_GES = 0x29;
+    static final int OP_LAND = 0x30;
+    static final int OP_LOR = 0x31;
+    static final int OP_LNOT = 0x32;
+
+    // must match JUC_PROGRAM_MAX_STACK / JUC_PROGRAM_MAX_LENGTH in junicorn_UnicornNative.c
+    static final int MAX_STACK = 32;
+    static final int MAX_LENGTH = 4096;
+
+    private final int op;
+    private final long imm;
+    private final HookCondition left;
+    private final HookCondition right;
+
+    private HookCondition(int op, long imm, HookCondition left, HookCondition right)
+    {
+        this.op = op;
+        this.imm = imm;
+        this.left = left;
+        this.right = right;
+    }
+
+    public static HookCondition constant(long value)
+    {
+        return new HookCondition(OP_CONST, value, null, null);
+    }
+
+    public static HookCondition reg(int reg_id)
+    {
+        return new HookCondition(OP_REG, reg_id, null, null);
+    }
+
+    public static HookCondition arg(int index)
+    {
+        if (index < 0 || index > 3)
+            throw new IllegalArgumentException("hook argument index must be 0..3");
+        return new HookCondition(OP_ARG, index, null, null);
+    }
+
+    public static HookCondition mem(HookCondition address, int size)
+    {
+        if (size != 1 && size != 2 && size != 4 && size != 8)
+            throw new IllegalArgumentException("load size must be 1, 2, 4 or 8");
+        return new HookCondition(OP_LOAD, size, address, null);
+    }
+
+    /**
+     * Loads {@code size} bytes at {@code [reg + offset]}.
+     */
+    public static HookCondition mem(int reg_id, long offset, int size)
+    {
+        return mem(reg(reg_id).plus(offset), size);
+    }
+
+    public HookCondition plus(HookCondition other)
+    {
+        return binary(OP_ADD, other);
+    }
+
+    public HookCondition plus(long value)
+    {
+        return plus(constant(value));
+    }
+
+    public HookCondition minus(HookCondition other)
+    {
+        return binary(OP_SUB, other);
+    }
+
+    public HookCondition minus(long value)
+    {
+        return minus(constant(value));
+    }
+
+    public HookCondition mask(long value)
+    {
+        return binary(OP_AND, constant(value));
+    }
+
+    public HookCondition bitand(HookCondition other)
+    {
+        return binary(OP_AND, other);
+    }
+
+    public HookCondition bitor(HookCondition other)
+    {
+        return binary(OP_OR, other);
+    }
+
+    public HookCondition bitxor(HookCondition other)
+    {
+        return binary(OP_XOR, other);
+    }
+
+    public HookCondition shl(int bits)
+    {
+        return binary(OP_SHL, constant(bits));
+    }
+
+    public HookCondition shr(int bits)
+    {
+        return binary(OP_SHR, constant(bits));
+    }
+
+    public HookCondition eq(HookCondition other)
+    {
+        return binary(OP_EQ, other);
+    }
+
+    public HookCondition eq(long value)
+    {
+        return eq(constant(value));
+    }
+
+    public HookCondition ne(HookCondition other)
+    {
+        return binary(OP_NE, other);
+    }
+
+    public HookCondition ne(long value)
+    {
+        return ne(constant(value));
+    }
+
+    public HookCondition lt(HookCondition other)
+    {
+        return binary(OP_LTU, other);
+    }
+
+    public HookCondition lt(long value)
+    {
+        return lt(constant(value));
+    }
+
+    public HookCondition le(HookCondition other)
+    {
+        return binary(OP_LEU, other);
+    }
+
+    public HookCondition le(long value)
+    {
+        return le(constant(value));
+    }
+
+    public HookCondition gt(HookCondition other)
+    {
+        return binary(OP_GTU, other);
+    }
+
+    public HookCondition gt(long value)
+    {
+        return gt(constant(value));
+    }
+
+    public HookCondition ge(HookCondition other)
+    {
+        return binary(OP_GEU, other);
+    }
+
+    public HookCondition ge(long value)
+    {
+        return ge(constant(value));
+    }
+
+    public HookCondition slt(long value)
+    {
+        return binary(OP_LTS, constant(value));
+    }
+
+    public HookCondition sle(long value)
+    {
+        return binary(OP_LES, constant(value));
+    }
+
+    public HookCondition sgt(long value)
+    {
+        return binary(OP_GTS, constant(value));
+    }
+
+    public HookCondition sge(long value)
+    {
+        return binary(OP_GES, constant(value));
+    }
+
+    public HookCondition and(HookCondition other)
+    {
+        return binary(OP_LAND, other);
+    }
+
+    public HookCondition or(HookCondition other)
+    {
+        return binary(OP_LOR, other);
+    }
+
+    public HookCondition not()
+    {
+        return new HookCondition(OP_LNOT, 0, this, null);
+    }
+
+    private HookCondition binary(int op, HookCondition other)
+    {
+        return new HookCondition(op, 0, this, other);
+    }
+
+    /**
+     * Compiles the expression to the bytecode understood by the native evaluator.
+     */
+    public byte[] compile()
+    {
+        return compile(reg_id -> false);
+    }
+
+    /**
+     * Compiles the expression, rejecting registers for which {@code wide} is true; the native
+     * evaluator reads every register into 64 bits.
+     */
+    byte[] compile(IntPredicate wide)
+    {
+        if (depth() > MAX_STACK)
+            throw new IllegalArgumentException("condition is nested too deeply");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        emit(out, wide);
+        if (out.size() > MAX_LENGTH)
+            throw new IllegalArgumentException("condition is too long");
+        return out.toByteArray();
+    }
+
+    private int depth()
+    {
+        if (left == null)
+            return 1;
+        if (right == null)
+            return left.depth();
+        return Math.max(left.depth(), right.depth() + 1);
+    }
+
+    private void emit(ByteArrayOutputStream out, IntPredicate wide)
+    {
+        if (left != null)
+            left.emit(out, wide);
+        if (right != null)
+            right.emit(out, wide);
+
+        out.write(op);
+        switch (op)
+        {
+            case OP_CONST:
+                for (int i = 0; i < 8; i++)
+                    out.write((int) (imm >>> (i * 8)));
+                break;
+            case OP_REG:
+                if (wide.test((int) imm))
+                    throw new IllegalArgumentException("register " + imm + " is wider than 64 bits");
+                for (int i = 0; i < 4; i++)
+                    out.write((int) (imm >>> (i * 8)));
+                break;
+            case OP_ARG:
+            case OP_LOAD:
+                out.write((int) imm);
+                break;
+        }
+    }
+}
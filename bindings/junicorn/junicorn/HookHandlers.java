@@ -8,6 +8,12 @@ class HookHandlers
         return 0;
     };
 
+    static final HookHandler ADAPTIVE_CODE_HANDLER = (record, uc, address, size, _3, _4) ->
+    {
+        boolean interested = ((AdaptiveCodeHook) record.hook).hook(uc, address, (int) size, record.user_data);
+        return interested ? 0 : 1;
+    };
+
     static final HookHandler INSTRUCTION_IN_HANDLER = (record, uc, port, size, _3, _4) ->
     {
         ((InstructionInHook) record.hook).hook(uc, (int) port, (int) size, record.user_data);
@@ -52,7 +58,9 @@ class HookHandlers
 
     static HookHandler findHandler(Hook hook)
     {
-        if (hook instanceof CodeHook)
+        if (hook instanceof AdaptiveCodeHook)
+            return ADAPTIVE_CODE_HANDLER;
+        else if (hook instanceof CodeHook)
             return CODE_HANDLER;
         else if (hook instanceof InstructionInHook)
             return INSTRUCTION_IN_HANDLER;
@@ -0,0 +1,76 @@
+package junicorn;
+
+/**
+ * Fans one native hook out to any number of Java listeners within a single upcall.
+ * <p>
+ * Register the multiplexer once with {@link Unicorn#hook_add}; listeners are then added and removed
+ * here without touching the native registration. The listener list is copied on every change and
+ * read without locks, so listeners may be changed from any thread, including from a listener.
+ * Each listener gets its own {@code user_data}; the one given to {@code hook_add} is ignored.
+ */
+public abstract class HookMultiplexer<H extends Hook> implements Hook
+{
+    private static final Hook[] NO_LISTENERS = new Hook[0];
+    private static final Object[] NO_USER_DATA = new Object[0];
+
+    static class Listeners
+    {
+        final Hook[] hooks;
+        final Object[] user_data;
+
+        Listeners(Hook[] hooks, Object[] user_data)
+        {
+            this.hooks = hooks;
+            this.user_data = user_data;
+        }
+    }
+
+    volatile Listeners listeners = new Listeners(NO_LISTENERS, NO_USER_DATA);
+
+    public synchronized void add(H listener, Object user_data)
+    {
+        Listeners old = listeners;
+        int n = old.hooks.length;
+        Hook[] hooks = new Hook[n + 1];
+        Object[] data = new Object[n + 1];
+        System.arraycopy(old.hooks, 0, hooks, 0, n);
+        System.arraycopy(old.user_data, 0, data, 0, n);
+        hooks[n] = listener;
+        data[n] = user_data;
+        listeners = new Listeners(hooks, data);
+    }
+
+    /**
+     * Removes the first registration of {@code listener}; returns false if it was not registered.
+     */
+    public synchronized boolean remove(H listener)
+    {
+        Listeners old = listeners;
+        int n = old.hooks.length;
+        for (int i = 0; i < n; i++)
+        {
+            if (old.hooks[i] == listener)
+            {
+                Hook[] hooks = new Hook[n - 1];
+                Object[] data = new Object[n - 1];
+                System.arraycopy(old.hooks, 0, hooks, 0, i);
+                System.arraycopy(old.hooks, i + 1, hooks, i, n - i - 1);
+                System.arraycopy(old.user_data, 0, data, 0, i);
+                System.arraycopy(old.user_data, i + 1, data, i, n - i - 1);
+                listeners = new Listeners(hooks, data);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size()
+    {
+        return listeners.hooks.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return listeners.hooks.length == 0;
+    }
+}
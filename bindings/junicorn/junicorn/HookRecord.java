@@ -4,14 +4,17 @@ public class HookRecord
 {
     final long id;
     final long handle;
+    final int type;
     final Hook hook;
     final Object user_data;
     final HookHandler handler;
+    volatile LatencyHistogram latency;
 
-    HookRecord(long id, long handle, Hook hook, Object user_data)
+    HookRecord(long id, long handle, int type, Hook hook, Object user_data)
     {
         this.id = id;
         this.handle = handle;
+        this.type = type;
         this.hook = hook;
         this.user_data = user_data;
         this.handler = HookHandlers.findHandler(hook);
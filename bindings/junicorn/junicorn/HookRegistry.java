@@ -0,0 +1,66 @@
+package junicorn;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Hooks of one engine, keyed by id for the callback path and by {@link Hook} for the API.
+ * <p>
+ * Ids live in a {@link CopyOnWriteLongMap}, so {@link #get(long)} takes no lock, never allocates
+ * and always sees a consistent table. Registration is serialized on the registry and may happen
+ * from any thread.
+ */
+class HookRegistry
+{
+    private final CopyOnWriteLongMap<HookRecord> ids = new CopyOnWriteLongMap<>();
+    private final HashMap<Hook, HookRecord> hooks = new HashMap<>();
+    private long next_id = 1;
+
+    HookRecord get(long id)
+    {
+        return ids.get(id);
+    }
+
+    synchronized long next_id()
+    {
+        return next_id++;
+    }
+
+    synchronized HookRecord find(Hook hook)
+    {
+        return hooks.get(hook);
+    }
+
+    synchronized void put(HookRecord record)
+    {
+        hooks.put(record.hook, record);
+        ids.put(record.id, record);
+    }
+
+    synchronized HookRecord remove(Hook hook)
+    {
+        HookRecord record = hooks.remove(hook);
+        if (record != null)
+            ids.remove(record.id);
+        return record;
+    }
+
+    synchronized List<HookRecord> clear()
+    {
+        List<HookRecord> records = new ArrayList<>(hooks.values());
+        hooks.clear();
+        ids.clear();
+        return records;
+    }
+
+    synchronized HookRecord[] records()
+    {
+        return hooks.values().toArray(new HookRecord[0]);
+    }
+
+    synchronized int size()
+    {
+        return hooks.size();
+    }
+}
@@ -0,0 +1,72 @@
+package junicorn;
+
+import static junicorn.UnicornNative.*;
+
+/**
+ * Native instruction counter. Each executed instruction only bumps a native counter, there is no
+ * upcall into Java. The counter can also request a stop that takes effect even if it is issued
+ * before the engine entered {@code emu_start}.
+ * <p>
+ * A counter from {@link Unicorn#block_counter()} counts block entries instead. Its hook runs once
+ * per block rather than once per instruction, so it is the cheap choice when only the stop request
+ * is needed; the stop then takes effect at the next block.
+ * <p>
+ * {@link #stop()} and {@link #close()} may race from different threads: both take the counter's
+ * lock, and a stop after close does nothing.
+ */
+public class InstructionCounter implements NativeCollector
+{
+    private final Unicorn uc;
+    private long counter;
+
+    InstructionCounter(Unicorn uc, long engine, boolean blocks) throws UnicornException
+    {
+        this.uc = uc;
+        this.counter = juc_counter_add(engine, blocks);
+        uc.collector_attach(this);
+    }
+
+    /**
+     * Removes the native hook. Closing the engine closes its counters.
+     */
+    @Override
+    @SuppressWarnings("WeakerAccess")
+    public synchronized void close() throws UnicornException
+    {
+        if (counter != 0)
+        {
+            uc.counter_del(counter);
+            counter = 0;
+            uc.collector_detach(this);
+        }
+    }
+
+    public synchronized long count()
+    {
+        return juc_counter_read(handle());
+    }
+
+    /**
+     * Clears the count and any pending stop request.
+     */
+    public synchronized void reset()
+    {
+        juc_counter_reset(handle());
+    }
+
+    /**
+     * Stops the engine at the next instruction, from any thread. Does nothing once the counter is closed.
+     */
+    public synchronized void stop()
+    {
+        if (counter != 0)
+            juc_counter_stop(counter);
+    }
+
+    private long handle()
+    {
+        if (counter == 0)
+            throw new IllegalStateException("instruction counter is closed");
+        return counter;
+    }
+}
@@ -12,4 +12,13 @@ public interface JavaUnicornConst
     public static final int JUC_HOOK_CB_INSN_IN = 1 << 4;
     public static final int JUC_HOOK_CB_INSN_OUT = 1 << 5;
     public static final int JUC_HOOK_CB_INSN_SYSCALL = 1 << 6;
+    public static final int JUC_HOOK_CB_CODE_ADAPTIVE = 1 << 7;
+
+    public static final int JUC_WATCH_ANY = 0;
+    public static final int JUC_WATCH_EQ = 1;
+    public static final int JUC_WATCH_NE = 2;
+    public static final int JUC_WATCH_LT = 3;
+    public static final int JUC_WATCH_LE = 4;
+    public static final int JUC_WATCH_GT = 5;
+    public static final int JUC_WATCH_GE = 6;
 }
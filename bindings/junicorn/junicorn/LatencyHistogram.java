@@ -0,0 +1,137 @@
+package junicorn;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Log-linear histogram of nanosecond latencies in the style of HdrHistogram: every power of two is
+ * split into 16 linear buckets, so any recorded value is reported within about 6%.
+ * <p>
+ * Each recording thread gets its own bucket array, so {@link #record(long)} is a thread-local
+ * lookup and a plain increment. Reads merge all threads and may miss values recorded concurrently.
+ */
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << (SUB_BITS - 1);
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final ConcurrentLinkedQueue<long[]> shards = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<long[]> local = ThreadLocal.withInitial(() ->
+    {
+        long[] buckets = new long[BUCKETS];
+        shards.add(buckets);
+        return buckets;
+    });
+
+    public void record(long nanos)
+    {
+        local.get()[index(Math.max(0, nanos))]++;
+    }
+
+    public void reset()
+    {
+        for (long[] buckets : shards)
+            Arrays.fill(buckets, 0);
+    }
+
+    public long count()
+    {
+        long count = 0;
+        for (long n : snapshot())
+            count += n;
+        return count;
+    }
+
+    public double mean()
+    {
+        long[] buckets = snapshot();
+        long count = 0;
+        double sum = 0;
+        for (int i = 0; i < buckets.length; i++)
+        {
+            count += buckets[i];
+            sum += (double) buckets[i] * (lowest(i) + highest(i)) / 2;
+        }
+        return count == 0 ? 0 : sum / count;
+    }
+
+    public long max()
+    {
+        long[] buckets = snapshot();
+        for (int i = buckets.length - 1; i >= 0; i--)
+        {
+            if (buckets[i] != 0)
+                return highest(i);
+        }
+        return 0;
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile (0..100) of recorded values.
+     */
+    public long percentile(double percentile)
+    {
+        long[] buckets = snapshot();
+        long count = 0;
+        for (long n : buckets)
+            count += n;
+        if (count == 0)
+            return 0;
+
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, percentile) / 100));
+        long seen = 0;
+        for (int i = 0; i < buckets.length; i++)
+        {
+            seen += buckets[i];
+            if (seen >= rank)
+                return highest(i);
+        }
+        return max();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("count=%d mean=%.0fns p50=%dns p90=%dns p99=%dns p99.9=%dns max=%dns",
+                count(), mean(), percentile(50), percentile(90), percentile(99), percentile(99.9), max());
+    }
+
+    private long[] snapshot()
+    {
+        long[] total = new long[BUCKETS];
+        for (long[] buckets : shards)
+        {
+            for (int i = 0; i < BUCKETS; i++)
+                total[i] += buckets[i];
+        }
+        return total;
+    }
+
+    static int index(long value)
+    {
+        if (value < 2 * SUB_BUCKETS)
+            return (int) value;
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    static long lowest(int index)
+    {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    static long highest(int index)
+    {
+        if (index < 2 * SUB_BUCKETS)
+            return index;
+
+        int shift = index / SUB_BUCKETS - 1;
+        return ((long) (index % SUB_BUCKETS + SUB_BUCKETS + 1) << shift) - 1;
+    }
+}
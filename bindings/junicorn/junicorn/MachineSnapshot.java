@@ -0,0 +1,266 @@
+package junicorn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static junicorn.UnicornConst.*;
+
+/**
+ * Complete engine state on disk: CPU context, region list with permissions and region contents.
+ * <p>
+ * Layout (little endian): a header with magic, version, arch, mode, context size and region count,
+ * the serialized context, one table entry per region (begin, end, perms, file offset), then the
+ * contents of every region starting on a {@link #ALIGNMENT} boundary so they can be mapped directly.
+ * Loading maps the contents copy-on-write with {@code mem_map_ptr}, so a new engine only pays for
+ * the pages it actually touches.
+ */
+public class MachineSnapshot implements Closeable, EngineFactory
+{
+    private static final int MAGIC = 0x5343554A; // "JUCS"
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 24;
+    private static final int REGION_ENTRY_SIZE = 32;
+    private static final int ALIGNMENT = 4096;
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int arch;
+    private final int mode;
+    private final byte[] context;
+    private final MemoryRegion[] regions;
+    private final long[] offsets;
+
+    private MachineSnapshot(FileChannel channel, int arch, int mode, byte[] context, MemoryRegion[] regions, long[] offsets)
+    {
+        this.channel = channel;
+        this.arch = arch;
+        this.mode = mode;
+        this.context = context;
+        this.regions = regions;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Streams the state of {@code uc} to {@code path}, copying region contents through a direct buffer.
+     */
+    public static void write(Unicorn uc, Path path) throws IOException, UnicornException
+    {
+        MemoryRegion[] regions = uc.mem_regions();
+        UnicornContext ctx = uc.save_context();
+        byte[] context;
+        try
+        {
+            context = ctx.toBytes();
+        }
+        finally
+        {
+            ctx.close();
+        }
+
+        int tableSize = HEADER_SIZE + context.length + regions.length * REGION_ENTRY_SIZE;
+        ByteBuffer table = ByteBuffer.allocateDirect(tableSize).order(ByteOrder.LITTLE_ENDIAN);
+        table.putInt(MAGIC);
+        table.putInt(VERSION);
+        table.putInt(uc.arch());
+        table.putInt(uc.mode());
+        table.putInt(context.length);
+        table.putInt(regions.length);
+        table.put(context);
+
+        long offset = align(tableSize);
+        for (MemoryRegion region : regions)
+        {
+            table.putLong(region.begin);
+            table.putLong(region.end);
+            table.putInt(region.perms);
+            table.putInt(0);
+            table.putLong(offset);
+            offset = align(offset + size(region));
+        }
+        table.flip();
+
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE))
+        {
+            write(out, table, 0);
+
+            ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+            offset = align(tableSize);
+            for (MemoryRegion region : regions)
+            {
+                long size = size(region);
+                for (long done = 0; done < size; done += chunk.limit())
+                {
+                    chunk.clear();
+                    chunk.limit((int) Math.min(CHUNK_SIZE, size - done));
+                    uc.mem_read(region.begin + done, chunk);
+                    chunk.flip();
+                    write(out, chunk, offset + done);
+                }
+                offset = align(offset + size);
+            }
+        }
+    }
+
+    public static MachineSnapshot open(Path path) throws IOException, UnicornException
+    {
+        // private mappings need a channel that is open for writing, the file itself is never modified
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try
+        {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            read(channel, header, 0);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION)
+                throw new UnicornException("not a junicorn snapshot: " + path, UC_ERR_ARG);
+
+            int arch = header.getInt();
+            int mode = header.getInt();
+            byte[] context = new byte[header.getInt()];
+            int count = header.getInt();
+
+            ByteBuffer table = ByteBuffer.allocate(context.length + count * REGION_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            read(channel, table, HEADER_SIZE);
+            table.get(context);
+
+            MemoryRegion[] regions = new MemoryRegion[count];
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++)
+            {
+                long begin = table.getLong();
+                long end = table.getLong();
+                int perms = table.getInt();
+                table.getInt();
+                regions[i] = new MemoryRegion(begin, end, perms);
+                offsets[i] = table.getLong();
+            }
+
+            return new MachineSnapshot(channel, arch, mode, context, regions, offsets);
+        }
+        catch (IOException | UnicornException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int arch()
+    {
+        return arch;
+    }
+
+    public int mode()
+    {
+        return mode;
+    }
+
+    public MemoryRegion[] regions()
+    {
+        return regions.clone();
+    }
+
+    /**
+     * Opens a new engine initialized from this snapshot.
+     */
+    @Override
+    public Unicorn newEngine() throws IOException, UnicornException
+    {
+        Unicorn uc = new Unicorn(arch, mode);
+        try
+        {
+            restore(uc);
+        }
+        catch (IOException | UnicornException | RuntimeException e)
+        {
+            uc.close();
+            throw e;
+        }
+        return uc;
+    }
+
+    /**
+     * Replaces the memory map, contents and CPU state of {@code uc} with this snapshot.
+     * Every region gets a fresh private mapping, so pages written since the last restore are discarded.
+     */
+    public void restore(Unicorn uc) throws IOException, UnicornException
+    {
+        if (uc.arch() != arch)
+            throw new UnicornException(UC_ERR_ARCH);
+        if (uc.mode() != mode)
+            throw new UnicornException(UC_ERR_MODE);
+
+        for (MemoryRegion region : uc.mem_regions())
+            uc.mem_unmap(region.begin, region.end - region.begin + 1);
+
+        for (int i = 0; i < regions.length; i++)
+        {
+            MemoryRegion region = regions[i];
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.PRIVATE, offsets[i], size(region));
+            uc.mem_map_buffer(region.begin, buffer, region.perms);
+        }
+
+        UnicornContext ctx = UnicornContext.fromBytes(uc, context);
+        try
+        {
+            uc.restore_context(ctx);
+        }
+        finally
+        {
+            ctx.close();
+        }
+    }
+
+    byte[] context()
+    {
+        return context;
+    }
+
+    /**
+     * Read-only view of the stored contents of region {@code index}.
+     */
+    ByteBuffer contents(int index) throws IOException, UnicornException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offsets[index], size(regions[index]));
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private static long size(MemoryRegion region) throws UnicornException
+    {
+        long size = region.end - region.begin + 1;
+        if (size > Integer.MAX_VALUE)
+            throw new UnicornException("region too large for snapshot: " + region, UC_ERR_ARG);
+        return size;
+    }
+
+    private static long align(long offset)
+    {
+        return (offset + ALIGNMENT - 1) & -ALIGNMENT;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+            position += channel.write(buffer, position);
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+    {
+        while (buffer.hasRemaining())
+        {
+            int n = channel.read(buffer, position);
+            if (n < 0)
+                throw new IOException("truncated snapshot");
+            position += n;
+        }
+        buffer.flip();
+    }
+}
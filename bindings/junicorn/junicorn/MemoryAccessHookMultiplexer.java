@@ -0,0 +1,16 @@
+package junicorn;
+
+/**
+ * {@link HookMultiplexer} for valid memory access listeners.
+ */
+public class MemoryAccessHookMultiplexer extends HookMultiplexer<MemoryAccessHook> implements MemoryAccessHook
+{
+    @Override
+    public void hook(Unicorn uc, int type, long address, int size, long value, Object user_data)
+    {
+        Listeners current = listeners;
+        Hook[] hooks = current.hooks;
+        for (int i = 0; i < hooks.length; i++)
+            ((MemoryAccessHook) hooks[i]).hook(uc, type, address, size, value, current.user_data[i]);
+    }
+}
@@ -0,0 +1,82 @@
+package junicorn;
+
+import static junicorn.UnicornNative.*;
+
+/**
+ * Native page-level memory access heatmap. A memory hook counts reads and writes per guest page
+ * and a block hook counts instruction fetches, once per block entry and page the block spans,
+ * since unicorn does not report fetches to memory hooks. Counting happens in native tables without
+ * calling into Java; read them with {@link #snapshot()} while the engine is not running.
+ */
+public class MemoryHeatmap implements NativeCollector
+{
+    public static final int PAGE_BITS = 12;
+
+    private final Unicorn uc;
+    private final int page_bits;
+    private long heatmap;
+
+    MemoryHeatmap(Unicorn uc, long engine, int page_bits) throws UnicornException
+    {
+        this.uc = uc;
+        this.page_bits = page_bits;
+        this.heatmap = juc_heatmap_add(engine, page_bits);
+        uc.collector_attach(this);
+    }
+
+    /**
+     * Removes the native hooks and frees the counts. Closing the engine closes its heatmaps.
+     */
+    @Override
+    @SuppressWarnings("WeakerAccess")
+    public void close() throws UnicornException
+    {
+        if (heatmap != 0)
+        {
+            uc.heatmap_del(heatmap);
+            heatmap = 0;
+            uc.collector_detach(this);
+        }
+    }
+
+    /**
+     * Counts since the last reset, hottest page first.
+     */
+    public PageHeat snapshot() throws UnicornException
+    {
+        long[] rows = juc_heatmap_read(handle());
+        int count = rows.length / 4;
+        long[] pages = new long[count];
+        long[] reads = new long[count];
+        long[] writes = new long[count];
+        long[] fetches = new long[count];
+        for (int i = 0; i < count; i++)
+        {
+            pages[i] = rows[i * 4];
+            reads[i] = rows[i * 4 + 1];
+            writes[i] = rows[i * 4 + 2];
+            fetches[i] = rows[i * 4 + 3];
+        }
+        return new PageHeat(pages, reads, writes, fetches, 1 << page_bits);
+    }
+
+    /**
+     * True if pages were lost because a native table could not grow.
+     */
+    public boolean overflow()
+    {
+        return juc_heatmap_overflow(handle());
+    }
+
+    public void reset()
+    {
+        juc_heatmap_reset(handle());
+    }
+
+    private long handle()
+    {
+        if (heatmap == 0)
+            throw new IllegalStateException("memory heatmap is closed");
+        return heatmap;
+    }
+}
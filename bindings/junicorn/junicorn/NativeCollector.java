@@ -0,0 +1,12 @@
+package junicorn;
+
+/**
+ * A native hook with its own state that stays attached to an engine until closed. {@link Unicorn#close()}
+ * closes the collectors still attached, while the engine is still valid, instead of leaving them to
+ * the garbage collector.
+ */
+interface NativeCollector extends AutoCloseable
+{
+    @Override
+    void close() throws UnicornException;
+}
@@ -0,0 +1,63 @@
+package junicorn;
+
+/**
+ * Per-page access counts from a {@link MemoryHeatmap}, as parallel arrays sorted by total accesses,
+ * hottest page first.
+ */
+public class PageHeat
+{
+    /**
+     * Guest address of each page.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public final long[] pages;
+
+    @SuppressWarnings("WeakerAccess")
+    public final long[] reads;
+
+    @SuppressWarnings("WeakerAccess")
+    public final long[] writes;
+
+    /**
+     * Blocks entered on the page, not instructions.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public final long[] fetches;
+
+    @SuppressWarnings("WeakerAccess")
+    public final int page_size;
+
+    public PageHeat(long[] pages, long[] reads, long[] writes, long[] fetches, int page_size)
+    {
+        this.pages = pages;
+        this.reads = reads;
+        this.writes = writes;
+        this.fetches = fetches;
+        this.page_size = page_size;
+    }
+
+    public int size()
+    {
+        return pages.length;
+    }
+
+    public long total(int i)
+    {
+        return reads[i] + writes[i] + fetches[i];
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder("PageHeat{");
+        for (int i = 0; i < Math.min(pages.length, 8); i++)
+        {
+            if (i > 0)
+                text.append(", ");
+            text.append(String.format("0x%x: r=%d w=%d x=%d", pages[i], reads[i], writes[i], fetches[i]));
+        }
+        if (pages.length > 8)
+            text.append(", ... ").append(pages.length - 8).append(" more");
+        return text.append('}').toString();
+    }
+}
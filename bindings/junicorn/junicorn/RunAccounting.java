@@ -0,0 +1,44 @@
+package junicorn;
+
+/**
+ * Where the time of one {@code emu_start} went, see {@link Unicorn#set_run_accounting}.
+ */
+public class RunAccounting
+{
+    @SuppressWarnings("WeakerAccess")
+    public final long elapsed_nanos;
+
+    /**
+     * Time spent inside Java hooks, measured around each upcall.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public final long java_nanos;
+
+    /**
+     * Everything else: translation, emulation and the native hook shim.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public final long native_nanos;
+
+    @SuppressWarnings("WeakerAccess")
+    public final long upcalls;
+
+    public RunAccounting(long elapsed_nanos, long java_nanos, long upcalls)
+    {
+        this.elapsed_nanos = elapsed_nanos;
+        this.java_nanos = java_nanos;
+        this.native_nanos = elapsed_nanos - java_nanos;
+        this.upcalls = upcalls;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RunAccounting{" +
+                "elapsed_nanos=" + elapsed_nanos +
+                ", java_nanos=" + java_nanos +
+                ", native_nanos=" + native_nanos +
+                ", upcalls=" + upcalls +
+                '}';
+    }
+}
@@ -0,0 +1,38 @@
+package junicorn;
+
+public class RunResult
+{
+    @SuppressWarnings("WeakerAccess")
+    public final StopReason reason;
+
+    @SuppressWarnings("WeakerAccess")
+    public final long pc;
+
+    /**
+     * Instructions executed, or -1 if they were not counted.
+     */
+    @SuppressWarnings("WeakerAccess")
+    public final long instructions;
+
+    @SuppressWarnings("WeakerAccess")
+    public final long elapsed_nanos;
+
+    public RunResult(StopReason reason, long pc, long instructions, long elapsed_nanos)
+    {
+        this.reason = reason;
+        this.pc = pc;
+        this.instructions = instructions;
+        this.elapsed_nanos = elapsed_nanos;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "RunResult{" +
+                "reason=" + reason +
+                ", pc=" + pc +
+                ", instructions=" + instructions +
+                ", elapsed_nanos=" + elapsed_nanos +
+                '}';
+    }
+}
@@ -0,0 +1,232 @@
+package junicorn;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongFunction;
+
+import static junicorn.UnicornNative.*;
+
+/**
+ * Native sampling profiler. A block hook takes a sample every {@code block_interval} blocks, or at
+ * the next block after {@link #start_timer(long)} asked for one, without calling into Java and
+ * without stopping the engine. A sample is the address of the block being entered plus up to
+ * {@code stack_depth} return addresses found by walking the guest frame pointer chain; on
+ * architectures without a known frame layout, or code built without frame pointers, the stacks are
+ * just the block address.
+ * <p>
+ * Samples go to a native ring buffer that is drained into Java by the timer thread and by every
+ * report method, so the emulation thread never allocates. Samples taken while the ring is full are
+ * dropped and counted, see {@link #dropped()}.
+ */
+public class SamplingProfiler implements NativeCollector
+{
+    static final int CAPACITY = 4096;
+    private static final int DRAIN_SAMPLES = 256;
+
+    private static final ScheduledExecutorService Timer = Executors.newSingleThreadScheduledExecutor(r ->
+    {
+        Thread thread = new Thread(r, "junicorn-profiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Unicorn uc;
+    private final int stride;
+    private final long[] drained;
+    private final HashMap<Stack, long[]> stacks = new HashMap<>();
+    private long samples;
+    private long profiler;
+    private ScheduledFuture<?> timer;
+
+    SamplingProfiler(Unicorn uc, long engine, long block_interval, int stack_depth, int fp_reg, int word_size, long next_offset, long return_offset) throws UnicornException
+    {
+        this.uc = uc;
+        this.stride = stack_depth + 2;
+        this.drained = new long[DRAIN_SAMPLES * stride];
+        this.profiler = juc_profiler_add(engine, block_interval, stack_depth, CAPACITY, fp_reg, word_size, next_offset, return_offset);
+        uc.collector_attach(this);
+    }
+
+    /**
+     * Removes the native hook; the samples taken so far stay available. Must not be called while the
+     * engine is running. Closing the engine closes its profiler.
+     */
+    @Override
+    @SuppressWarnings("WeakerAccess")
+    public synchronized void close() throws UnicornException
+    {
+        stop_timer();
+        if (profiler != 0)
+        {
+            drain();
+            uc.profiler_del(profiler);
+            profiler = 0;
+            uc.collector_detach(this);
+        }
+    }
+
+    /**
+     * Requests a sample every {@code period_micros} from a shared timer thread, in addition to the
+     * block interval. The sample is taken at the next block entry, so a run that sits in one long
+     * block is attributed to that block.
+     */
+    public synchronized void start_timer(long period_micros)
+    {
+        if (period_micros <= 0)
+            throw new IllegalArgumentException("period_micros must be positive");
+
+        stop_timer();
+        timer = Timer.scheduleAtFixedRate(this::tick, period_micros, period_micros, TimeUnit.MICROSECONDS);
+    }
+
+    public synchronized void stop_timer()
+    {
+        if (timer != null)
+        {
+            timer.cancel(false);
+            timer = null;
+        }
+    }
+
+    private synchronized void tick()
+    {
+        if (profiler == 0)
+            return;
+
+        juc_profiler_request(profiler);
+        drain();
+    }
+
+    private synchronized void drain()
+    {
+        if (profiler == 0)
+            return;
+
+        int count;
+        do
+        {
+            count = juc_profiler_drain(profiler, drained);
+            for (int i = 0; i < count; i++)
+            {
+                int offset = i * stride;
+                int depth = (int) drained[offset];
+                Stack stack = new Stack(Arrays.copyOfRange(drained, offset + 1, offset + 2 + depth));
+                stacks.computeIfAbsent(stack, k -> new long[1])[0]++;
+            }
+            samples += count;
+        }
+        while (count == DRAIN_SAMPLES);
+    }
+
+    public synchronized long samples()
+    {
+        drain();
+        return samples;
+    }
+
+    /**
+     * Samples lost because the ring buffer was full between two drains.
+     */
+    public synchronized long dropped()
+    {
+        return profiler != 0 ? juc_profiler_dropped(profiler) : 0;
+    }
+
+    public synchronized void reset()
+    {
+        drain();
+        stacks.clear();
+        samples = 0;
+    }
+
+    /**
+     * Sample count per sampled block address, ignoring the call stacks.
+     */
+    public synchronized Map<Long, Long> histogram()
+    {
+        drain();
+        HashMap<Long, Long> histogram = new HashMap<>();
+        for (Map.Entry<Stack, long[]> entry : stacks.entrySet())
+            histogram.merge(entry.getKey().frames[0], entry.getValue()[0], Long::sum);
+        return histogram;
+    }
+
+    /**
+     * The {@code top} most sampled block addresses, one per line with their share of all samples.
+     */
+    public String report(int top)
+    {
+        Map<Long, Long> histogram = histogram();
+        long total = samples();
+        List<Map.Entry<Long, Long>> entries = new ArrayList<>(histogram.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("samples=%d dropped=%d\n", total, dropped()));
+        for (Map.Entry<Long, Long> entry : entries.subList(0, Math.min(top, entries.size())))
+            report.append(String.format("%6.2f%% %10d  0x%x\n", 100.0 * entry.getValue() / total, entry.getValue(), entry.getKey()));
+        return report.toString();
+    }
+
+    public void write_collapsed(Writer out) throws IOException
+    {
+        write_collapsed(out, address -> "0x" + Long.toHexString(address));
+    }
+
+    /**
+     * Writes the samples in the collapsed stack format read by flamegraph.pl and speedscope: one
+     * line per distinct stack, outermost frame first, frames separated by ';', then the count.
+     *
+     * @param symbols names a guest address, e.g. from a symbol table
+     */
+    public synchronized void write_collapsed(Writer out, LongFunction<String> symbols) throws IOException
+    {
+        drain();
+        for (Map.Entry<Stack, long[]> entry : stacks.entrySet())
+        {
+            long[] frames = entry.getKey().frames;
+            for (int i = frames.length - 1; i >= 0; i--)
+            {
+                out.write(symbols.apply(frames[i]));
+                out.write(i > 0 ? ';' : ' ');
+            }
+            out.write(Long.toString(entry.getValue()[0]));
+            out.write('\n');
+        }
+        out.flush();
+    }
+
+    // sampled block address followed by return addresses, innermost first
+    private static final class Stack
+    {
+        final long[] frames;
+        private final int hash;
+
+        Stack(long[] frames)
+        {
+            this.frames = frames;
+            this.hash = Arrays.hashCode(frames);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof Stack && Arrays.equals(frames, ((Stack) o).frames);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package junicorn;
+
+public enum StopReason
+{
+    /** Execution reached the {@code until} address. */
+    UNTIL,
+
+    /** The {@code count} instruction limit was reached. */
+    COUNT,
+
+    /** The wall-clock {@code timeout} expired. */
+    TIMEOUT,
+
+    /** Emulation was stopped with {@code emu_stop}, e.g. from a hook. */
+    STOPPED,
+
+    /** The {@link Watchdog} block budget was exhausted. */
+    BUDGET,
+
+    /** The {@link Watchdog} detected a block repeating with unchanged registers. */
+    LOOP,
+
+    /** A breakpoint set with {@code set_breakpoints} or {@code emu_run_until} was reached. */
+    BREAKPOINT
+}
@@ -0,0 +1,371 @@
+package junicorn;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongFunction;
+
+import static junicorn.UnicornNative.*;
+
+/**
+ * Writes emulation activity as a Chrome trace event JSON file, which chrome://tracing and
+ * ui.perfetto.dev open directly. Each attached engine gets two tracks: one with {@code emu_start}
+ * spans, interrupts, syscalls and memory map changes, and one with guest function spans.
+ * <p>
+ * Function spans come from call/ret detection in a native block hook: a block entered at the
+ * return address of the innermost open call closes it, and a jump out of a block whose fall-through
+ * address is then on top of the stack (x86) or in the link register opens one. Tail calls and
+ * longjmp-style unwinding are not recognized.
+ * <p>
+ * All records, including the ones for runs and memory maps, are appended to a native ring buffer
+ * per engine with a native timestamp; the emulation thread never formats or allocates. A writer
+ * thread drains the rings every few milliseconds. Records appended while a ring is full are
+ * dropped and counted, see {@link #dropped()}.
+ */
+public class TraceRecorder implements Closeable
+{
+    public static final int TRACE_CALLS = 1;
+    public static final int TRACE_INTERRUPTS = 2;
+    public static final int TRACE_SYSCALLS = 4;
+    public static final int TRACE_ALL = TRACE_CALLS | TRACE_INTERRUPTS | TRACE_SYSCALLS;
+
+    static final int RUN_BEGIN = 1;
+    static final int RUN_END = 2;
+    static final int CALL = 3;
+    static final int RET = 4;
+    static final int INTR = 5;
+    static final int SYSCALL = 6;
+    static final int MAP = 7;
+    static final int UNMAP = 8;
+    static final int PROTECT = 9;
+
+    static final int CAPACITY = 1 << 16;
+    private static final int RECORD = 5;
+    private static final int DRAIN_RECORDS = 4096;
+    private static final long FLUSH_NANOS = 10_000_000L;
+
+    // an attached engine; closing the engine detaches it from the recorder
+    private class Source implements NativeCollector
+    {
+        final Unicorn uc;
+        final long trace;
+        final int tid;
+        int open_calls;
+        long last_time;
+
+        Source(Unicorn uc, long trace, int tid)
+        {
+            this.uc = uc;
+            this.trace = trace;
+            this.tid = tid;
+        }
+
+        @Override
+        public void close()
+        {
+            synchronized (TraceRecorder.this)
+            {
+                if (sources.contains(this))
+                    detach(this);
+            }
+        }
+    }
+
+    private final Writer out;
+    private final LongFunction<String> symbols;
+    private final long epoch = juc_trace_clock();
+    private final CopyOnWriteArrayList<Source> sources = new CopyOnWriteArrayList<>();
+    private final long[] drained = new long[DRAIN_RECORDS * RECORD];
+    private final StringBuilder line = new StringBuilder();
+    private final Thread writer;
+    private volatile boolean closed;
+    private int next_tid = 1;
+    private long dropped;
+    private IOException error;
+
+    public TraceRecorder(Writer out)
+    {
+        this(out, address -> "0x" + Long.toHexString(address));
+    }
+
+    /**
+     * @param symbols names the guest functions, e.g. from a symbol table
+     */
+    public TraceRecorder(Writer out, LongFunction<String> symbols)
+    {
+        this.out = out;
+        this.symbols = symbols;
+        write_raw("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[\n");
+        write_raw("{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":1,\"tid\":0,\"args\":{\"name\":\"unicorn\"}}");
+        this.writer = new Thread(this::loop, "junicorn-trace");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Starts tracing an engine. An engine can be attached to one recorder at a time.
+     *
+     * @param flags TRACE_* sources enabled in addition to runs and memory maps
+     */
+    public synchronized void attach(Unicorn uc, int flags) throws UnicornException
+    {
+        if (closed)
+            throw new IllegalStateException("recorder is closed");
+
+        Source source = new Source(uc, uc.trace_attach(flags, CAPACITY), next_tid);
+        next_tid += 2;
+        thread_name(source.tid, "engine " + source.tid / 2 + " (arch " + uc.arch() + ")");
+        thread_name(source.tid + 1, "engine " + source.tid / 2 + " calls");
+        sources.add(source);
+        uc.collector_attach(source);
+    }
+
+    /**
+     * Stops tracing an engine and writes out its remaining records. Must not be called while the
+     * engine is running. Closing the engine detaches it.
+     */
+    public synchronized void detach(Unicorn uc)
+    {
+        for (Source source : sources)
+        {
+            if (source.uc == uc)
+                detach(source);
+        }
+    }
+
+    private void detach(Source source)
+    {
+        drain(source);
+        close_calls(source);
+        dropped += juc_trace_dropped(source.trace);
+        sources.remove(source);
+        source.uc.trace_detach(source.trace);
+        source.uc.collector_detach(source);
+    }
+
+    /**
+     * Records lost because a ring buffer was full, summed over all engines.
+     */
+    public synchronized long dropped()
+    {
+        long total = dropped;
+        for (Source source : sources)
+            total += juc_trace_dropped(source.trace);
+        return total;
+    }
+
+    /**
+     * Detaches all engines, completes the JSON document and closes the writer. Must not be called
+     * while an attached engine is running.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        // unpark rather than interrupt: an interrupt during a write closes an interruptible channel
+        // under the writer, and the end of the document could no longer be written
+        closed = true;
+        LockSupport.unpark(writer);
+        boolean interrupted = false;
+        while (writer.isAlive())
+        {
+            try
+            {
+                writer.join();
+            }
+            catch (InterruptedException e)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+
+        synchronized (this)
+        {
+            for (Source source : sources)
+                detach(source);
+            write_raw("\n]}\n");
+            try
+            {
+                out.close();
+            }
+            catch (IOException e)
+            {
+                if (error == null)
+                    error = e;
+            }
+            if (error != null)
+                throw error;
+        }
+    }
+
+    private void loop()
+    {
+        while (!closed)
+        {
+            synchronized (this)
+            {
+                for (Source source : sources)
+                    drain(source);
+                try
+                {
+                    out.flush();
+                }
+                catch (IOException e)
+                {
+                    if (error == null)
+                        error = e;
+                }
+            }
+            LockSupport.parkNanos(FLUSH_NANOS);
+        }
+    }
+
+    private void drain(Source source)
+    {
+        int count;
+        do
+        {
+            count = juc_trace_drain(source.trace, drained);
+            for (int i = 0; i < count; i++)
+                event(source, i * RECORD);
+        }
+        while (count == DRAIN_RECORDS);
+    }
+
+    private void event(Source source, int offset)
+    {
+        long time = drained[offset];
+        int type = (int) drained[offset + 1];
+        long a = drained[offset + 2];
+        long b = drained[offset + 3];
+        long c = drained[offset + 4];
+        source.last_time = time;
+
+        switch (type)
+        {
+            case RUN_BEGIN:
+                begin("emu_start", "run", 'B', source.tid, time);
+                line.append(",\"args\":{\"begin\":\"0x").append(Long.toHexString(a))
+                        .append("\",\"until\":\"0x").append(Long.toHexString(b))
+                        .append("\",\"count\":").append(c).append('}');
+                break;
+            case RUN_END:
+                begin(null, "run", 'E', source.tid, time);
+                line.append(",\"args\":{\"errno\":").append(a).append('}');
+                break;
+            case CALL:
+                source.open_calls++;
+                begin(symbols.apply(a), "call", 'B', source.tid + 1, time);
+                line.append(",\"args\":{\"return\":\"0x").append(Long.toHexString(b)).append("\"}");
+                break;
+            case RET:
+                if (source.open_calls == 0)
+                    return;
+                source.open_calls--;
+                begin(null, "call", 'E', source.tid + 1, time);
+                break;
+            case INTR:
+                begin("intr " + a, "intr", 'i', source.tid, time);
+                line.append(",\"s\":\"t\",\"args\":{\"pc\":\"0x").append(Long.toHexString(b))
+                        .append("\",\"value\":").append(c).append('}');
+                break;
+            case SYSCALL:
+                begin("syscall " + a, "syscall", 'i', source.tid, time);
+                line.append(",\"s\":\"t\",\"args\":{\"pc\":\"0x").append(Long.toHexString(b)).append("\"}");
+                break;
+            case MAP:
+            case UNMAP:
+            case PROTECT:
+                begin(type == MAP ? "mem_map" : type == UNMAP ? "mem_unmap" : "mem_protect", "memory", 'i', source.tid, time);
+                line.append(",\"s\":\"p\",\"args\":{\"address\":\"0x").append(Long.toHexString(a))
+                        .append("\",\"size\":").append(b);
+                if (type != UNMAP)
+                    line.append(",\"perms\":").append(c);
+                line.append('}');
+                break;
+            default:
+                return;
+        }
+        end();
+    }
+
+    // calls still open when an engine is detached are closed at its last record
+    private void close_calls(Source source)
+    {
+        for (; source.open_calls > 0; source.open_calls--)
+        {
+            begin(null, "call", 'E', source.tid + 1, source.last_time);
+            end();
+        }
+    }
+
+    private void thread_name(int tid, String name)
+    {
+        line.setLength(0);
+        line.append(",\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":").append(tid)
+                .append(",\"args\":{\"name\":");
+        quote(name);
+        line.append("}");
+        end();
+    }
+
+    private void begin(String name, String category, char phase, int tid, long time)
+    {
+        long nanos = Math.max(0, time - epoch);
+        line.setLength(0);
+        line.append(",\n{");
+        if (name != null)
+        {
+            line.append("\"name\":");
+            quote(name);
+            line.append(',');
+        }
+        line.append("\"cat\":\"").append(category).append("\",\"ph\":\"").append(phase)
+                .append("\",\"pid\":1,\"tid\":").append(tid).append(",\"ts\":").append(nanos / 1000).append('.');
+        long fraction = nanos % 1000;
+        if (fraction < 100)
+            line.append('0');
+        if (fraction < 10)
+            line.append('0');
+        line.append(fraction);
+    }
+
+    private void end()
+    {
+        line.append('}');
+        write_raw(line);
+    }
+
+    private void quote(String text)
+    {
+        line.append('"');
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+            if (ch == '"' || ch == '\\')
+                line.append('\\').append(ch);
+            else if (ch < 0x20)
+                line.append(String.format("\\u%04x", (int) ch));
+            else
+                line.append(ch);
+        }
+        line.append('"');
+    }
+
+    private void write_raw(CharSequence text)
+    {
+        if (error != null)
+            return;
+        try
+        {
+            out.append(text);
+        }
+        catch (IOException e)
+        {
+            error = e;
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package junicorn;
 
-import sun.reflect.generics.reflectiveObjects.NotImplementedException;
-
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static junicorn.UnicornNative.*;
 
@@ -10,9 +21,33 @@ import static junicorn.UnicornNative.*;
 public class Unicorn implements JavaUnicornConst, UnicornConst, ArmConst, Arm64Const, M68kConst, SparcConst, MipsConst, X86Const
 {
     private long engine;
-    private HashMap<Long, HookRecord> HookRecordMap = new HashMap<>();
-    private HashMap<Hook, Long> HookIdMap = new HashMap<>();
-    private int hook_id_counter = 1;
+    private final HookRegistry hooks = new HookRegistry();
+    private final ConcurrentLinkedQueue<Long> PendingHookDeletes = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Long> PendingPredicateFrees = new ConcurrentLinkedQueue<>();
+    private int running;
+    private Thread runner;
+    private volatile boolean stop_requested;
+    // memory figures for stats(), recounted by the thread that changes the memory map
+    private volatile long mapped_bytes;
+    private volatile int mapped_regions;
+    private volatile long run_count;
+    private volatile long emulation_nanos;
+    private volatile long retired_upcalls;
+    volatile boolean run_accounting;
+    private long run_java_nanos;
+    private long run_upcalls;
+    private volatile RunAccounting last_run_accounting;
+    private int hook_sample_countdown = EmulationEvents.HOOK_SAMPLE_INTERVAL;
+    private final HashMap<Long, CodeHookMultiplexer> BlockListeners = new HashMap<>();
+    private final HashMap<Long, CodeHookMultiplexer> CodeListeners = new HashMap<>();
+    private HashMap<Long, ByteBuffer> MemoryBackingMap = new HashMap<>();
+    private HashSet<Long> SharedBackings = new HashSet<>();
+    // collectors hooked into the engine, closed by close() while the engine is still valid
+    private final Set<NativeCollector> AttachedCollectors = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Watchdog watchdog;
+    private long breakpoints;
+    private volatile long trace;
+    private long[] breakpoint_addrs = new long[0];
 
     private int arch;
     private int mode;
@@ -21,8 +56,13 @@ public class Unicorn implements JavaUnicornConst, UnicornConst, ArmConst, Arm64C
     {
         this.arch = arch;
         this.mode = mode;
+        EmulationEvents.EngineOpen event = new EmulationEvents.EngineOpen();
+        event.begin();
         this.engine = uc_open(arch, mode);
         juc_engine_register(this.engine, this);
+        event.arch = arch;
+        event.mode = mode;
+        event.commit();
     }
 
     @Override
@@ -32,31 +72,219 @@ public class Unicorn implements JavaUnicornConst, UnicornConst, ArmConst, Arm64C
         super.finalize();
     }
 
+    /**
+     * Closes the engine together with the collectors still attached to it. A collector that fails
+     * to close does not keep the engine open; its error is thrown once the engine is closed.
+     */
     @SuppressWarnings("WeakerAccess")
     public void close() throws UnicornException
     {
         if (this.engine != 0)
         {
-            uc_close(this.engine);
-            juc_engine_unregister(this.engine);
-            HookRecordMap.clear();
-            HookIdMap.clear();
-            this.engine = 0;
+            EmulationEvents.EngineClose event = new EmulationEvents.EngineClose();
+            event.begin();
+            event.hooks = hooks.size();
+            NativeCollector[] collectors;
+            synchronized (AttachedCollectors)
+            {
+                collectors = AttachedCollectors.toArray(new NativeCollector[0]);
+            }
+            UnicornException failure = null;
+            for (NativeCollector collector : collectors)
+            {
+                try
+                {
+                    collector.close();
+                }
+                catch (UnicornException e)
+                {
+                    if (failure == null)
+                        failure = e;
+                    else
+                        failure.addSuppressed(e);
+                }
+            }
+            if (breakpoints != 0)
+            {
+                juc_breakpoints_del(engine, breakpoints);
+                breakpoints = 0;
+            }
+            // the lock keeps stats() from reading native hook records while they are freed
+            synchronized (PendingHookDeletes)
+            {
+                uc_close(this.engine);
+                juc_engine_unregister(this.engine);
+                for (HookRecord record : hooks.clear())
+                    juc_hook_free(record.handle);
+                for (Long handle; (handle = PendingHookDeletes.poll()) != null; )
+                    juc_hook_free(handle);
+                for (Long program; (program = PendingPredicateFrees.poll()) != null; )
+                    juc_program_free(program);
+                this.engine = 0;
+            }
+            synchronized (BlockListeners)
+            {
+                BlockListeners.clear();
+            }
+            synchronized (CodeListeners)
+            {
+                CodeListeners.clear();
+            }
+            MemoryBackingMap.clear();
+            SharedBackings.clear();
+            event.arch = arch;
+            event.mode = mode;
+            event.commit();
+            if (failure != null)
+                throw failure;
+        }
+    }
+
+    void collector_attach(NativeCollector collector)
+    {
+        synchronized (AttachedCollectors)
+        {
+            AttachedCollectors.add(collector);
+        }
+    }
+
+    void collector_detach(NativeCollector collector)
+    {
+        synchronized (AttachedCollectors)
+        {
+            AttachedCollectors.remove(collector);
         }
     }
 
+    public int arch()
+    {
+        return arch;
+    }
+
+    public int mode()
+    {
+        return mode;
+    }
+
+    /**
+     * True once every {@link EmulationEvents#HOOK_SAMPLE_INTERVAL} upcalls; only called on the emulation thread.
+     */
+    boolean hook_sample()
+    {
+        if (--hook_sample_countdown > 0)
+            return false;
+        hook_sample_countdown = EmulationEvents.HOOK_SAMPLE_INTERVAL;
+        return true;
+    }
+
+    /**
+     * Statistics for {@link UnicornStats}, read from any thread while the engine may be running.
+     */
+    EngineStats stats()
+    {
+        // hook_del and close free native hook records under the same lock
+        synchronized (PendingHookDeletes)
+        {
+            if (engine == 0)
+                return null;
+
+            long upcalls = retired_upcalls;
+            HookRecord[] records = hooks.records();
+            for (HookRecord record : records)
+                upcalls += juc_hook_upcalls(record.handle);
+
+            return new EngineStats(engine, arch, mode, running > 0, run_count, emulation_nanos, mapped_bytes, mapped_regions, records, upcalls);
+        }
+    }
+
+    /**
+     * Upcall time for the current run; only called on the emulation thread.
+     */
+    void account_upcall(long nanos)
+    {
+        run_java_nanos += nanos;
+        run_upcalls++;
+    }
+
+    /**
+     * Times every upcall so that each run can be split into native and Java time, see
+     * {@link #last_run_accounting()}. Costs two clock reads per upcall while enabled.
+     */
+    public void set_run_accounting(boolean enabled)
+    {
+        run_accounting = enabled;
+    }
+
+    /**
+     * Accounting of the most recent run that finished with accounting enabled, or null.
+     */
+    public RunAccounting last_run_accounting()
+    {
+        return last_run_accounting;
+    }
+
+    /**
+     * Records the time spent in {@code hook} for each upcall into a {@link LatencyHistogram}.
+     * Enabling keeps an existing histogram, disabling drops it.
+     *
+     * @return the histogram, or null when disabled
+     */
+    public LatencyHistogram hook_set_profiling(Hook hook, boolean enabled)
+    {
+        HookRecord record = hooks.find(hook);
+        if (record == null)
+            throw new IllegalArgumentException("unknown hook");
+
+        synchronized (record)
+        {
+            if (!enabled)
+                record.latency = null;
+            else if (record.latency == null)
+                record.latency = new LatencyHistogram();
+            return record.latency;
+        }
+    }
+
+    /**
+     * Latency histogram of a hook with profiling enabled, or null.
+     */
+    public LatencyHistogram hook_latency(Hook hook)
+    {
+        HookRecord record = hooks.find(hook);
+        return record != null ? record.latency : null;
+    }
+
     HookRecord get_hook(long id)
     {
-        return HookRecordMap.get(id);
+        return hooks.get(id);
     }
 
     private void hook_add(int cb_type, int type, Hook hook, int begin, int end, int arg1, Object user_data) throws UnicornException
     {
-        long id = hook_id_counter++;
-        long handle = uc_hook_add(engine, cb_type, type, id, begin, end, arg1);
-        HookRecord record = new HookRecord(id, handle, hook, user_data);
-        HookRecordMap.put(id, record);
-        HookIdMap.put(hook, id);
+        synchronized (PendingHookDeletes)
+        {
+            hook_add_check();
+            long id = hooks.next_id();
+            long handle = uc_hook_add(engine, cb_type, type, id, begin, end, arg1);
+            hook_put(new HookRecord(id, handle, type, hook, user_data));
+        }
+    }
+
+    /**
+     * Unicorn's hook lists are not synchronized, so native hooks are only added while the engine is
+     * idle or from a callback on the emulation thread itself. A running engine is instrumented from
+     * other threads through {@link #hook_add_listener} or by enabling a hook added beforehand.
+     * Called with the PendingHookDeletes lock held, which keeps a run from starting meanwhile.
+     */
+    private void hook_add_check()
+    {
+        if (running > 0 && runner != Thread.currentThread())
+            throw new IllegalStateException("cannot change native hooks while the engine runs on another thread");
+    }
+
+    private void hook_put(HookRecord record)
+    {
+        hooks.put(record);
     }
 
     public int errno()
@@ -66,14 +294,593 @@ public class Unicorn implements JavaUnicornConst, UnicornConst, ArmConst, Arm64C
 
     public void emu_start(long begin, long until, long timeout, long count) throws UnicornException
     {
-        uc_emu_start(engine, begin, until, timeout, count);
+        if (watchdog != null)
+            watchdog.reset();
+
+        emu_continue(begin, until, timeout, count);
+    }
+
+    /**
+     * Like {@code emu_start}, but keeps the watchdog budget of the run being continued.
+     */
+    void emu_continue(long begin, long until, long timeout, long count) throws UnicornException
+    {
+        if (breakpoints != 0)
+            juc_breakpoints_arm(breakpoints, arch == UC_ARCH_ARM ? begin & ~1L : begin);
+
+        synchronized (PendingHookDeletes)
+        {
+            if (running++ == 0)
+                runner = Thread.currentThread();
+        }
+        stop_requested = false;
+        EmulationEvents.EmulationRun event = new EmulationEvents.EmulationRun();
+        boolean accounting = run_accounting;
+        long java_nanos = run_java_nanos;
+        long upcalls = run_upcalls;
+        int errno = UC_ERR_OK;
+        Throwable failure = null;
+        UnicornException pending = null;
+        trace_event(TraceRecorder.RUN_BEGIN, begin, until, count);
+        long start = System.nanoTime();
+        event.begin();
+        try
+        {
+            uc_emu_start(engine, begin, until, timeout, count);
+        }
+        catch (UnicornException e)
+        {
+            errno = e.getErrno();
+            event.reason = "ERROR";
+            event.errno = errno;
+            failure = e;
+            throw e;
+        }
+        catch (RuntimeException | Error e)
+        {
+            failure = e;
+            throw e;
+        }
+        finally
+        {
+            long elapsed = System.nanoTime() - start;
+            trace_event(TraceRecorder.RUN_END, errno, 0, 0);
+            if (accounting)
+                last_run_accounting = new RunAccounting(elapsed, run_java_nanos - java_nanos, run_upcalls - upcalls);
+            synchronized (PendingHookDeletes)
+            {
+                if (--running == 0)
+                {
+                    runner = null;
+                    pending = hook_del_pending();
+                }
+                run_count++;
+                emulation_nanos += elapsed;
+            }
+
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.arch = arch;
+                event.begin = begin;
+                event.until = until;
+                event.timeout = timeout;
+                event.count = count;
+                if (event.reason == null)
+                    event.reason = stop_reason(until, timeout, elapsed).name();
+                event.commit();
+            }
+
+            // a failed unlink is reported after the run's own failure, if any
+            if (pending != null)
+            {
+                if (failure != null)
+                    failure.addSuppressed(pending);
+                else
+                    throw pending;
+            }
+        }
+    }
+
+    /**
+     * Best guess at why the last run returned, without an instruction counter COUNT is reported as STOPPED.
+     */
+    private StopReason stop_reason(long until, long timeout, long elapsed)
+    {
+        StopReason reason = watchdog_reason();
+        if (reason != null)
+            return reason;
+        if (breakpoint_hit())
+            return StopReason.BREAKPOINT;
+
+        try
+        {
+            if (reg_read(pc_reg()) == until)
+                return StopReason.UNTIL;
+        }
+        catch (UnicornException ignored)
+        {
+        }
+
+        if (timeout > 0 && elapsed >= timeout * 1000)
+            return StopReason.TIMEOUT;
+        return StopReason.STOPPED;
+    }
+
+    /**
+     * Replaces the breakpoint set. Membership is tested natively: a block hook arms the
+     * per-instruction check only for blocks containing a breakpoint, and the engine stops in front
+     * of the instruction at a breakpoint without calling into Java. The instruction at the
+     * {@code begin} address of a run never triggers, so a run can resume from the breakpoint it
+     * stopped at. An empty array removes the native hooks.
+     * <p>
+     * While the engine is running, the set can only be replaced from a hook on the emulation thread.
+     * An empty set then stays installed, without any addresses, until the run returns.
+     */
+    public void set_breakpoints(long[] addrs) throws UnicornException
+    {
+        breakpoints_apply(addrs);
+        breakpoint_addrs = addrs.clone();
+    }
+
+    public long[] breakpoints()
+    {
+        return breakpoint_addrs.clone();
+    }
+
+    /**
+     * True if the last run stopped at a breakpoint, see {@link #breakpoint_address()}.
+     */
+    public boolean breakpoint_hit()
+    {
+        return breakpoints != 0 && juc_breakpoints_hit(breakpoints);
+    }
+
+    public long breakpoint_address()
+    {
+        return breakpoints != 0 ? juc_breakpoints_address(breakpoints) : 0;
+    }
+
+    /**
+     * Runs until any of {@code stop_addrs} or a breakpoint from {@link #set_breakpoints} is reached.
+     *
+     * @return the address stopped at, or -1 if the run ended for another reason
+     */
+    public long emu_run_until(long begin, long[] stop_addrs) throws UnicornException
+    {
+        return emu_run_until(begin, stop_addrs, 0, 0);
+    }
+
+    public long emu_run_until(long begin, long[] stop_addrs, long timeout, long count) throws UnicornException
+    {
+        long[] addrs = new long[breakpoint_addrs.length + stop_addrs.length];
+        System.arraycopy(breakpoint_addrs, 0, addrs, 0, breakpoint_addrs.length);
+        System.arraycopy(stop_addrs, 0, addrs, breakpoint_addrs.length, stop_addrs.length);
+
+        breakpoints_apply(addrs);
+        try
+        {
+            // stop_addrs are all handled natively, until is an address the PC never takes
+            emu_start(begin, -1, timeout, count);
+            return breakpoint_hit() ? breakpoint_address() : -1;
+        }
+        finally
+        {
+            breakpoints_apply(breakpoint_addrs);
+        }
+    }
+
+    private void breakpoints_apply(long[] addrs) throws UnicornException
+    {
+        // the native set is freed on replacement, so it must not change under the emulation thread
+        synchronized (PendingHookDeletes)
+        {
+            hook_add_check();
+            if (addrs.length == 0)
+            {
+                if (breakpoints != 0 && running > 0)
+                {
+                    juc_breakpoints_set(breakpoints, addrs);
+                }
+                else if (breakpoints != 0)
+                {
+                    juc_breakpoints_del(engine, breakpoints);
+                    breakpoints = 0;
+                }
+                return;
+            }
+
+            if (breakpoints == 0)
+                breakpoints = juc_breakpoints_add(engine);
+            juc_breakpoints_set(breakpoints, addrs);
+        }
     }
 
     public void emu_stop() throws UnicornException
     {
+        stop_requested = true;
         uc_emu_stop(engine);
     }
 
+    /**
+     * True if {@code emu_stop} was called since the current or last run started.
+     */
+    boolean stop_requested()
+    {
+        return stop_requested;
+    }
+
+    /**
+     * Runs {@code emu_start} on the shared emulation executor instead of the calling thread.
+     */
+    public CompletableFuture<RunResult> emu_start_async(long begin, long until, long timeout, long count)
+    {
+        return emu_start_async(begin, until, timeout, count, false, EmulationThreads.EXECUTOR);
+    }
+
+    public CompletableFuture<RunResult> emu_start_async(long begin, long until, long timeout, long count, Executor executor)
+    {
+        return emu_start_async(begin, until, timeout, count, false, executor);
+    }
+
+    /**
+     * Runs {@code emu_start} on {@code executor}. Cancelling the returned future stops the engine
+     * at the next block; the stop is honoured even if the run has not reached native code yet. The
+     * engine must not be used by other threads until the future completes.
+     *
+     * @param count_instructions report {@link RunResult#instructions}, at the cost of a native hook
+     *                           per instruction; otherwise it is -1, and a run that used up
+     *                           {@code count} reports STOPPED rather than COUNT
+     */
+    public CompletableFuture<RunResult> emu_start_async(long begin, long until, long timeout, long count, boolean count_instructions, Executor executor)
+    {
+        CompletableFuture<RunResult> future = new CompletableFuture<>();
+        InstructionCounter counter;
+        try
+        {
+            counter = count_instructions ? instruction_counter() : block_counter();
+        }
+        catch (UnicornException e)
+        {
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        future.whenComplete((result, error) ->
+        {
+            if (future.isCancelled())
+                counter.stop();
+        });
+
+        executor.execute(() ->
+        {
+            RunResult result = null;
+            Throwable failure = null;
+            try
+            {
+                if (!future.isDone())
+                    result = run(begin, until, timeout, count, count_instructions ? counter : null);
+            }
+            catch (Throwable e)
+            {
+                failure = e;
+            }
+
+            // the counter is released before the future completes, a failure to release it fails the run
+            try
+            {
+                counter.close();
+            }
+            catch (UnicornException e)
+            {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+
+            if (failure != null)
+                future.completeExceptionally(failure);
+            else if (result != null)
+                future.complete(result);
+        });
+
+        return future;
+    }
+
+    // counter is null when instructions are not counted
+    private RunResult run(long begin, long until, long timeout, long count, InstructionCounter counter) throws UnicornException
+    {
+        long start = System.nanoTime();
+        emu_start(begin, until, timeout, count);
+        long elapsed = System.nanoTime() - start;
+
+        long pc = reg_read(pc_reg());
+        long instructions = counter != null ? counter.count() : -1;
+
+        StopReason reason = watchdog_reason();
+        if (reason != null)
+            return new RunResult(reason, pc, instructions, elapsed);
+        if (breakpoint_hit())
+            return new RunResult(StopReason.BREAKPOINT, pc, instructions, elapsed);
+
+        if (pc == until)
+            reason = StopReason.UNTIL;
+        else if (count > 0 && counter != null && instructions >= count)
+            reason = StopReason.COUNT;
+        else if (timeout > 0 && elapsed >= timeout * 1000)
+            reason = StopReason.TIMEOUT;
+        else
+            reason = StopReason.STOPPED;
+
+        return new RunResult(reason, pc, instructions, elapsed);
+    }
+
+    public InstructionCounter instruction_counter() throws UnicornException
+    {
+        return new InstructionCounter(this, engine, false);
+    }
+
+    /**
+     * A counter of block entries, see {@link InstructionCounter}.
+     */
+    public InstructionCounter block_counter() throws UnicornException
+    {
+        return new InstructionCounter(this, engine, true);
+    }
+
+    void counter_del(long counter) throws UnicornException
+    {
+        juc_counter_del(engine, counter);
+    }
+
+    /**
+     * Installs a native watchdog, see {@link Watchdog}. An engine has at most one watchdog.
+     *
+     * @param block_budget   maximum blocks per run, 0 for no limit
+     * @param loop_threshold consecutive repeats of one block with unchanged {@code regs} that count as
+     *                       a runaway loop, 0 to disable
+     * @param regs           registers compared between repeats, at most 64 bits wide; required when
+     *                       {@code loop_threshold} is not 0, since a block that merely repeats is not a loop
+     */
+    public Watchdog watchdog(long block_budget, int loop_threshold, int... regs) throws UnicornException
+    {
+        if (watchdog != null)
+            throw new UnicornException("watchdog already installed", UC_ERR_HOOK_EXIST);
+        if (loop_threshold != 0 && (regs == null || regs.length == 0))
+            throw new UnicornException("loop detection needs at least one state register", UC_ERR_ARG);
+        if (regs != null)
+        {
+            for (int reg : regs)
+            {
+                if (is_wide_reg(reg))
+                    throw new UnicornException("watchdog state registers must fit in 64 bits", UC_ERR_ARG);
+            }
+        }
+
+        watchdog = new Watchdog(this, engine, block_budget, loop_threshold, regs);
+        return watchdog;
+    }
+
+    void watchdog_del(Watchdog watchdog, long ptr) throws UnicornException
+    {
+        if (this.watchdog == watchdog)
+            this.watchdog = null;
+        juc_watchdog_del(engine, ptr);
+    }
+
+    Watchdog watchdog_get()
+    {
+        return watchdog;
+    }
+
+    StopReason watchdog_reason()
+    {
+        return watchdog != null ? watchdog.reason() : null;
+    }
+
+    /**
+     * Installs a native sampling profiler, see {@link SamplingProfiler}. Call stacks are walked
+     * through the frame pointer on x86 (EBP/RBP), ARM64 (X29) and ARM (R11, ARM-mode frames where
+     * FP points at the saved LR); elsewhere only the sampled block address is recorded.
+     *
+     * @param block_interval take a sample every this many blocks, 0 to sample only on timer requests
+     * @param stack_depth    return addresses recorded per sample, at most 64
+     */
+    public SamplingProfiler profiler(long block_interval, int stack_depth) throws UnicornException
+    {
+        switch (arch)
+        {
+            case UC_ARCH_X86:
+                if ((mode & UC_MODE_64) != 0)
+                    return new SamplingProfiler(this, engine, block_interval, stack_depth, UC_X86_REG_RBP, 8, 0, 8);
+                if ((mode & UC_MODE_32) != 0)
+                    return new SamplingProfiler(this, engine, block_interval, stack_depth, UC_X86_REG_EBP, 4, 0, 4);
+                break;
+            case UC_ARCH_ARM64:
+                return new SamplingProfiler(this, engine, block_interval, stack_depth, UC_ARM64_REG_X29, 8, 0, 8);
+            case UC_ARCH_ARM:
+                return new SamplingProfiler(this, engine, block_interval, stack_depth, UC_ARM_REG_R11, 4, -4, 0);
+        }
+        return new SamplingProfiler(this, engine, block_interval, 0, 0, 4, 0, 0);
+    }
+
+    void profiler_del(long ptr) throws UnicornException
+    {
+        juc_profiler_del(engine, ptr);
+    }
+
+    /**
+     * Installs a native block coverage collector, see {@link BlockCoverage}.
+     */
+    public BlockCoverage block_coverage() throws UnicornException
+    {
+        return new BlockCoverage(this, engine);
+    }
+
+    void coverage_del(long ptr) throws UnicornException
+    {
+        juc_coverage_del(engine, ptr);
+    }
+
+    /**
+     * Installs a native memory heatmap with 4 KB pages, see {@link MemoryHeatmap}.
+     */
+    public MemoryHeatmap memory_heatmap() throws UnicornException
+    {
+        return memory_heatmap(MemoryHeatmap.PAGE_BITS);
+    }
+
+    /**
+     * @param page_bits log2 of the page size counts are kept for, 0 to 30
+     */
+    public MemoryHeatmap memory_heatmap(int page_bits) throws UnicornException
+    {
+        if (page_bits < 0 || page_bits > 30)
+            throw new UnicornException("page_bits out of range", UC_ERR_ARG);
+
+        return new MemoryHeatmap(this, engine, page_bits);
+    }
+
+    void heatmap_del(long ptr) throws UnicornException
+    {
+        juc_heatmap_del(engine, ptr);
+    }
+
+    /**
+     * Installs the native trace hooks of a {@link TraceRecorder} and returns its ring buffer.
+     * Call/ret detection needs the stack pointer (x86) or link register, elsewhere it is skipped.
+     */
+    long trace_attach(int flags, int capacity) throws UnicornException
+    {
+        if (trace != 0)
+            throw new UnicornException("trace already attached", UC_ERR_HOOK_EXIST);
+
+        switch (arch)
+        {
+            case UC_ARCH_X86:
+                if ((mode & UC_MODE_64) != 0)
+                    trace = juc_trace_add(engine, flags, capacity, UC_X86_REG_RIP, UC_X86_REG_RSP, -1, UC_X86_REG_RAX, 8, UC_X86_INS_SYSCALL);
+                else if ((mode & UC_MODE_32) != 0)
+                    trace = juc_trace_add(engine, flags, capacity, UC_X86_REG_EIP, UC_X86_REG_ESP, -1, UC_X86_REG_EAX, 4, 0);
+                else
+                    trace = juc_trace_add(engine, flags & ~TraceRecorder.TRACE_CALLS, capacity, UC_X86_REG_IP, -1, -1, UC_X86_REG_AX, 4, 0);
+                break;
+            case UC_ARCH_ARM:
+                trace = juc_trace_add(engine, flags, capacity, UC_ARM_REG_PC, UC_ARM_REG_SP, UC_ARM_REG_LR, UC_ARM_REG_R7, 4, 0);
+                break;
+            case UC_ARCH_ARM64:
+                trace = juc_trace_add(engine, flags, capacity, UC_ARM64_REG_PC, UC_ARM64_REG_SP, UC_ARM64_REG_LR, UC_ARM64_REG_X8, 8, 0);
+                break;
+            case UC_ARCH_MIPS:
+                trace = juc_trace_add(engine, flags, capacity, UC_MIPS_REG_PC, UC_MIPS_REG_SP, UC_MIPS_REG_RA, UC_MIPS_REG_V0,
+                        (mode & UC_MODE_MIPS64) != 0 ? 8 : 4, 0);
+                break;
+            default:
+                trace = juc_trace_add(engine, flags & ~TraceRecorder.TRACE_CALLS, capacity, pc_reg(), -1, -1, -1, 4, 0);
+        }
+        return trace;
+    }
+
+    void trace_detach(long ptr)
+    {
+        if (trace == ptr)
+            trace = 0;
+        juc_trace_del(engine, ptr);
+    }
+
+    /**
+     * Appends a Java-side record to the trace ring. The ring has a single producer, the thread
+     * running the engine, so a record from any other thread during a run is dropped; holding the
+     * lock keeps a run from starting on another thread while the record is written.
+     */
+    private void trace_event(int type, long a, long b, long c)
+    {
+        synchronized (PendingHookDeletes)
+        {
+            long trace = this.trace;
+            if (trace == 0 || (running > 0 && runner != Thread.currentThread()))
+                return;
+            juc_trace_append(trace, type, a, b, c);
+        }
+    }
+
+    int pc_reg() throws UnicornException
+    {
+        switch (arch)
+        {
+            case UC_ARCH_X86:
+                if ((mode & UC_MODE_64) != 0)
+                    return UC_X86_REG_RIP;
+                if ((mode & UC_MODE_32) != 0)
+                    return UC_X86_REG_EIP;
+                return UC_X86_REG_IP;
+            case UC_ARCH_ARM:
+                return UC_ARM_REG_PC;
+            case UC_ARCH_ARM64:
+                return UC_ARM64_REG_PC;
+            case UC_ARCH_MIPS:
+                return UC_MIPS_REG_PC;
+            case UC_ARCH_SPARC:
+                return UC_SPARC_REG_PC;
+            case UC_ARCH_M68K:
+                return UC_M68K_REG_PC;
+            default:
+                throw new UnicornException(UC_ERR_ARCH);
+        }
+    }
+
+    /**
+     * Address to pass as {@code begin} to continue from the current PC. On ARM the thumb bit is
+     * taken from CPSR, since emu_start selects the instruction set from bit 0 of the address.
+     */
+    long pc_resume() throws UnicornException
+    {
+        long pc = reg_read(pc_reg());
+        if (arch == UC_ARCH_ARM && (reg_read(UC_ARM_REG_CPSR) & 0x20) != 0)
+            pc |= 1;
+        return pc;
+    }
+
+    private static class EmulationThreads
+    {
+        private static final AtomicInteger threads = new AtomicInteger();
+
+        static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable ->
+        {
+            Thread thread = new Thread(runnable, "junicorn-emu-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * True for registers wider than 64 bits, which native code reading into a uint64_t must reject.
+     * Unlike {@link #is_big_reg} this covers every vector, x87 and descriptor register of the
+     * architectures the binding exposes, including those unicorn 1.0 does not read at all.
+     */
+    private boolean is_wide_reg(int reg_id)
+    {
+        if (is_big_reg(reg_id))
+            return true;
+
+        switch (arch)
+        {
+            case UC_ARCH_X86:
+                return (UC_X86_REG_FP0 <= reg_id && reg_id <= UC_X86_REG_FP7)
+                        || (UC_X86_REG_ST0 <= reg_id && reg_id <= UC_X86_REG_ST7)
+                        || (UC_X86_REG_XMM0 <= reg_id && reg_id <= UC_X86_REG_ZMM31)
+                        || (UC_X86_REG_IDTR <= reg_id && reg_id <= UC_X86_REG_TR);
+            case UC_ARCH_ARM:
+                return UC_ARM_REG_Q0 <= reg_id && reg_id <= UC_ARM_REG_Q15;
+            case UC_ARCH_ARM64:
+                return (UC_ARM64_REG_Q0 <= reg_id && reg_id <= UC_ARM64_REG_Q31)
+                        || (UC_ARM64_REG_V0 <= reg_id && reg_id <= UC_ARM64_REG_V31);
+            default:
+                return false;
+        }
+    }
+
     private boolean is_big_reg(int reg_id)
     {
         switch (arch)
@@ -109,7 +916,7 @@ public class Unicorn implements JavaUnicornConst, UnicornConst, ArmConst, Arm64C
     {
         boolean is_big = is_big_reg(reg_id);
         if (is_big)
-            throw new NotImplementedException();
+            throw new UnsupportedOperationException();
 
         return uc_reg_read(engine, reg_id);
     }
@@ -118,20 +925,20 @@ public class Unicorn implements JavaUnicornConst, UnicornConst, ArmConst, Arm64C
     {
         boolean is_big = is_big_reg(reg_id);
         if (is_big)
-            throw new NotImplementedException();
+            throw new UnsupportedOperationException();
 
         //noinspection ConstantConditions
         if (false)
             return uc_reg_read(engine, reg_id, opt);
 
-        throw new NotImplementedException();
+        throw new UnsupportedOperationException();
     }
 
     public void reg_write(int reg_id, long value) throws UnicornException
     {
         boolean is_big = is_big_reg(reg_id);
         if (is_big)
-            throw new NotImplementedException();
+            throw new UnsupportedOperationException();
 
         uc_reg_write(engine, reg_id, value);
     }
@@ -143,42 +950,259 @@ public class Unicorn implements JavaUnicornConst, UnicornConst, ArmConst, Arm64C
 
     public void mem_write(long address, byte[] data) throws UnicornException
     {
+        unshare(address, data.length);
         uc_mem_write(engine, address, data, data.length);
     }
 
     public void mem_write(long address, byte[] data, long size) throws UnicornException
     {
+        unshare(address, size);
         uc_mem_write(engine, address, data, size);
     }
 
+    /**
+     * Reads {@code buffer.remaining()} bytes into the buffer and advances its position.
+     * Direct buffers are filled natively without an intermediate array.
+     */
+    public void mem_read(long address, ByteBuffer buffer) throws UnicornException
+    {
+        int size = buffer.remaining();
+        if (buffer.isDirect())
+        {
+            juc_mem_read(engine, address, buffer, buffer.position(), size);
+            buffer.position(buffer.position() + size);
+        }
+        else
+        {
+            buffer.put(uc_mem_read(engine, address, size));
+        }
+    }
+
+    /**
+     * Writes {@code buffer.remaining()} bytes from the buffer and advances its position.
+     */
+    public void mem_write(long address, ByteBuffer buffer) throws UnicornException
+    {
+        int size = buffer.remaining();
+        unshare(address, size);
+        if (buffer.isDirect())
+        {
+            juc_mem_write(engine, address, buffer, buffer.position(), size);
+            buffer.position(buffer.position() + size);
+        }
+        else
+        {
+            byte[] data = new byte[size];
+            buffer.get(data);
+            uc_mem_write(engine, address, data, size);
+        }
+    }
+
     public void mem_map(long address, long size) throws UnicornException
     {
-        uc_mem_map(engine, address, size, UC_PROT_ALL);
+        mem_map(address, size, UC_PROT_ALL);
     }
 
     public void mem_map(long address, long size, int perms) throws UnicornException
     {
+        EmulationEvents.MemMap event = new EmulationEvents.MemMap();
+        event.begin();
         uc_mem_map(engine, address, size, perms);
+        mem_layout_changed();
+        mem_map_commit(event, "map", address, size, perms);
     }
 
     public void mem_map_ptr(long address, long size, int perms, long ptr) throws UnicornException
     {
+        EmulationEvents.MemMap event = new EmulationEvents.MemMap();
+        event.begin();
         uc_mem_map_ptr(engine, address, size, perms, ptr);
+        mem_layout_changed();
+        mem_map_commit(event, "map_ptr", address, size, perms);
+    }
+
+    private void mem_map_commit(EmulationEvents.MemMap event, String kind, long address, long size, int perms)
+    {
+        trace_event(TraceRecorder.MAP, address, size, perms);
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.kind = kind;
+            event.address = address;
+            event.size = size;
+            event.perms = perms;
+            event.commit();
+        }
+    }
+
+    /**
+     * Maps the remaining bytes of a direct buffer as guest memory. The engine keeps a reference
+     * to the buffer until the range is unmapped, so the backing storage stays valid.
+     */
+    public void mem_map_buffer(long address, ByteBuffer buffer, int perms) throws UnicornException
+    {
+        if (!buffer.isDirect())
+            throw new IllegalArgumentException("buffer must be direct");
+
+        EmulationEvents.MemMap event = new EmulationEvents.MemMap();
+        event.begin();
+        ByteBuffer backing = buffer.slice();
+        uc_mem_map_ptr(engine, address, backing.remaining(), perms, juc_buffer_address(backing));
+        MemoryBackingMap.put(address, backing);
+        mem_layout_changed();
+        mem_map_commit(event, "map_buffer", address, backing.remaining(), perms);
+    }
+
+    /**
+     * Recounts the memory map for {@link #stats()} on the thread that changed it, so the JMX thread
+     * never walks unicorn's region list while its owner modifies it.
+     */
+    private void mem_layout_changed() throws UnicornException
+    {
+        MemoryRegion[] regions = uc_mem_regions(engine);
+        long mapped = 0;
+        for (MemoryRegion region : regions)
+            mapped += region.end - region.begin + 1;
+        mapped_bytes = mapped;
+        mapped_regions = regions.length;
     }
 
     public void mem_unmap(long address, long size) throws UnicornException
     {
         uc_mem_unmap(engine, address, size);
+        mem_layout_changed();
+        trace_event(TraceRecorder.UNMAP, address, size, 0);
+
+        Iterator<Map.Entry<Long, ByteBuffer>> it = MemoryBackingMap.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<Long, ByteBuffer> entry = it.next();
+            long begin = entry.getKey();
+            if (address <= begin && begin + entry.getValue().remaining() <= address + size)
+            {
+                it.remove();
+                SharedBackings.remove(begin);
+            }
+        }
     }
 
     public void mem_protect(long address, long size) throws UnicornException
     {
-        uc_mem_protect(engine, address, size, UC_PROT_ALL);
+        mem_protect(address, size, UC_PROT_ALL);
     }
 
     public void mem_protect(long address, long size, int perms) throws UnicornException
     {
+        if ((perms & UC_PROT_WRITE) != 0)
+            unshare(address, size);
+
         uc_mem_protect(engine, address, size, perms);
+        mem_layout_changed();
+        trace_event(TraceRecorder.PROTECT, address, size, perms);
+    }
+
+    /**
+     * Creates a new engine with the same arch/mode, memory map, memory contents and CPU context.
+     * <p>
+     * Read-only regions backed by a buffer (see {@link #mem_map_buffer}) are shared with the fork
+     * instead of copied; the guest cannot write them, and a write or protection change from Java on
+     * either side first gives that side a private copy. All other regions are copied into new direct
+     * buffers owned by the fork. The source engine must not be running while it is forked.
+     */
+    public Unicorn fork() throws UnicornException
+    {
+        Unicorn child = new Unicorn(arch, mode);
+        try
+        {
+            for (MemoryRegion region : mem_regions())
+            {
+                long size = region.end - region.begin + 1;
+                ByteBuffer backing = MemoryBackingMap.get(region.begin);
+                if ((region.perms & UC_PROT_WRITE) == 0 && backing != null && backing.remaining() == size)
+                {
+                    child.mem_map_buffer(region.begin, backing, region.perms);
+                    child.SharedBackings.add(region.begin);
+                    SharedBackings.add(region.begin);
+                }
+                else
+                {
+                    child.mem_map_buffer(region.begin, copy_region(region.begin, size), region.perms);
+                }
+            }
+
+            UnicornContext context = save_context();
+            try
+            {
+                child.restore_context(context);
+            }
+            finally
+            {
+                context.close();
+            }
+        }
+        catch (UnicornException | RuntimeException e)
+        {
+            child.close();
+            throw e;
+        }
+
+        return child;
+    }
+
+    private ByteBuffer copy_region(long address, long size) throws UnicornException
+    {
+        if (size > Integer.MAX_VALUE)
+            throw new UnicornException("region too large to copy", UC_ERR_ARG);
+
+        ByteBuffer copy = ByteBuffer.allocateDirect((int) size);
+        mem_read(address, copy);
+        copy.flip();
+        return copy;
+    }
+
+    /**
+     * Gives this engine a private copy of every shared backing overlapping the range.
+     */
+    private void unshare(long address, long size) throws UnicornException
+    {
+        if (SharedBackings.isEmpty())
+            return;
+
+        Iterator<Long> it = SharedBackings.iterator();
+        while (it.hasNext())
+        {
+            long begin = it.next();
+            ByteBuffer backing = MemoryBackingMap.get(begin);
+            long length = backing.remaining();
+            if (address >= begin + length || begin >= address + size)
+                continue;
+
+            it.remove();
+
+            // the range may have been split by mem_protect, keep the permissions of every piece
+            MemoryRegion[] pieces = regions_in(begin, begin + length - 1);
+            ByteBuffer copy = copy_region(begin, length);
+            uc_mem_unmap(engine, begin, length);
+            uc_mem_map_ptr(engine, begin, length, UC_PROT_ALL, juc_buffer_address(copy));
+            for (MemoryRegion piece : pieces)
+                uc_mem_protect(engine, piece.begin, piece.end - piece.begin + 1, piece.perms);
+            MemoryBackingMap.put(begin, copy);
+        }
+    }
+
+    private MemoryRegion[] regions_in(long begin, long end) throws UnicornException
+    {
+        MemoryRegion[] regions = mem_regions();
+        int count = 0;
+        for (MemoryRegion region : regions)
+        {
+            if (begin <= region.begin && region.end <= end)
+                regions[count++] = region;
+        }
+
+        MemoryRegion[] result = new MemoryRegion[count];
+        System.arraycopy(regions, 0, result, 0, count);
+        return result;
     }
 
     public long query(int mode) throws UnicornException
@@ -242,29 +1266,254 @@ public class Unicorn implements JavaUnicornConst, UnicornConst, ArmConst, Arm64C
         hook_add(JUC_HOOK_CB_CODE, type, hook, begin, end, 0, user_data);
     }
 
+    /**
+     * Adds {@code listener} to the shared {@link CodeHookMultiplexer} of this type and range,
+     * registering the native hook the first time the type and range are used. Further listeners on
+     * the same type and range cost no extra upcall per event, and can be added from any thread
+     * while the engine is running.
+     */
+    public void hook_add_listener(int type, CodeHook listener, int begin, int end, Object user_data) throws UnicornException
+    {
+        if (type != UC_HOOK_BLOCK && type != UC_HOOK_CODE)
+            throw new IllegalArgumentException();
+
+        HashMap<Long, CodeHookMultiplexer> multiplexers = type == UC_HOOK_BLOCK ? BlockListeners : CodeListeners;
+        synchronized (multiplexers)
+        {
+            long key = (long) begin << 32 | (end & 0xffffffffL);
+            CodeHookMultiplexer multiplexer = multiplexers.get(key);
+            if (multiplexer == null)
+            {
+                multiplexer = new CodeHookMultiplexer();
+                hook_add(type, multiplexer, begin, end, null);
+                multiplexers.put(key, multiplexer);
+            }
+            else if (multiplexer.isEmpty())
+            {
+                hook_set_enabled(multiplexer, true);
+            }
+            multiplexer.add(listener, user_data);
+        }
+    }
+
+    /**
+     * Removes a listener added with {@link #hook_add_listener}. The native hook stays registered
+     * and is only disabled once its last listener is gone.
+     */
+    public boolean hook_del_listener(int type, CodeHook listener, int begin, int end)
+    {
+        HashMap<Long, CodeHookMultiplexer> multiplexers = type == UC_HOOK_BLOCK ? BlockListeners : CodeListeners;
+        synchronized (multiplexers)
+        {
+            CodeHookMultiplexer multiplexer = multiplexers.get((long) begin << 32 | (end & 0xffffffffL));
+            if (multiplexer == null || !multiplexer.remove(listener))
+                return false;
+            if (multiplexer.isEmpty())
+                hook_set_enabled(multiplexer, false);
+            return true;
+        }
+    }
+
+    /**
+     * Adds a code hook whose false results are remembered per address in the native shim, so
+     * addresses the hook has declined stop costing an upcall. A hook condition, if set, is checked
+     * first and a rejected event never marks its address.
+     */
+    public void hook_add_adaptive(int type, AdaptiveCodeHook hook, int begin, int end, Object user_data) throws UnicornException
+    {
+        if (type != UC_HOOK_BLOCK && type != UC_HOOK_CODE)
+            throw new IllegalArgumentException();
+
+        hook_add(JUC_HOOK_CB_CODE_ADAPTIVE, type, hook, begin, end, 0, user_data);
+    }
+
+    /**
+     * Forgets every address declined by an {@link AdaptiveCodeHook}. May be called while the engine
+     * is running, the set is cleared before the next event is dispatched.
+     */
+    public void hook_reset_suppressed(Hook hook)
+    {
+        synchronized (PendingHookDeletes)
+        {
+            juc_hook_suppress_reset(hook_handle(hook));
+        }
+    }
+
+    /**
+     * Number of addresses an {@link AdaptiveCodeHook} has declined since it was added or last reset.
+     */
+    public long hook_suppressed_count(Hook hook)
+    {
+        synchronized (PendingHookDeletes)
+        {
+            return juc_hook_suppress_count(hook_handle(hook));
+        }
+    }
+
+    /**
+     * Watches {@code size} bytes at {@code address}. The overlap test and the condition are
+     * evaluated in the native memory hook against the value the watched bytes hold after the access
+     * (in guest byte order, compared unsigned), and only accesses that make {@code cond} with
+     * {@code operand} become true reach Java or stop the engine.
+     * <p>
+     * Conditions are edge triggered: a write fires when the bytes it overwrites did not satisfy the
+     * condition, a read when the value seen by the previous overlapping access, or at
+     * {@code watch_add} time, did not. A watch for {@code JUC_WATCH_EQ} 0 therefore fires when the
+     * value becomes 0, not on every access while it is 0. Reads compare with the last value the
+     * watch saw, which misses changes made by {@code mem_write} or, for a read-only watch, by guest
+     * writes.
+     * <p>
+     * Accesses that start below {@code address} are seen if they are at most 64 bytes wide; unicorn
+     * reports vector loads and stores, and each {@code rep movs} element, as separate accesses well
+     * below that size.
+     *
+     * @param type one or both of UC_HOOK_MEM_READ and UC_HOOK_MEM_WRITE
+     * @param size 1, 2, 4 or 8 with a value condition; any length with JUC_WATCH_ANY
+     * @param cond one of the JUC_WATCH_* conditions, JUC_WATCH_ANY matches every overlapping access
+     * @param stop stop the engine when the condition holds
+     * @param hook called when the condition holds, may be null
+     * @return the hook to pass to {@link #hook_del}, {@code hook} itself unless it was null
+     */
+    public Hook watch_add(int type, long address, int size, int cond, long operand, boolean stop, MemoryAccessHook hook, Object user_data) throws UnicornException
+    {
+        if (type == 0 || (type & ~(UC_HOOK_MEM_READ | UC_HOOK_MEM_WRITE)) != 0)
+            throw new IllegalArgumentException();
+        if (cond < JUC_WATCH_ANY || cond > JUC_WATCH_GE)
+            throw new IllegalArgumentException();
+
+        Hook key = hook != null ? hook : new Hook() {};
+        synchronized (PendingHookDeletes)
+        {
+            hook_add_check();
+            long id = hooks.next_id();
+            long handle = juc_watch_add(engine, type, hook != null ? id : 0, address, size, cond, operand, stop);
+            hook_put(new HookRecord(id, handle, type, key, user_data));
+        }
+        return key;
+    }
+
+    /**
+     * Removes a hook. May be called from any thread, including from inside a hook. While the engine
+     * is running the hook is only disabled and unlinked from unicorn once the run returns, since
+     * unicorn may be iterating its hook list at that moment.
+     */
     public void hook_del(Hook hook) throws UnicornException
     {
-        long id = HookIdMap.get(hook);
-        HookRecord record = HookRecordMap.get(id);
-        uc_hook_del(engine, record.handle);
-        HookRecordMap.remove(id);
-        HookIdMap.remove(hook);
+        HookRecord record = hooks.remove(hook);
+        if (record == null)
+            throw new IllegalArgumentException("unknown hook");
+
+        synchronized (PendingHookDeletes)
+        {
+            retired_upcalls += juc_hook_upcalls(record.handle);
+            if (running > 0)
+            {
+                juc_hook_set_enabled(record.handle, false);
+                PendingHookDeletes.add(record.handle);
+            }
+            else
+            {
+                uc_hook_del(engine, record.handle);
+            }
+        }
+    }
+
+    /**
+     * Unlinks the hooks deleted during the run. Every record is freed even if unicorn fails to
+     * unlink one; the first failure is returned with the others suppressed.
+     */
+    private UnicornException hook_del_pending()
+    {
+        for (Long program; (program = PendingPredicateFrees.poll()) != null; )
+            juc_program_free(program);
+
+        UnicornException failure = null;
+        for (Long handle; (handle = PendingHookDeletes.poll()) != null; )
+        {
+            try
+            {
+                uc_hook_del(engine, handle);
+            }
+            catch (UnicornException e)
+            {
+                if (failure == null)
+                    failure = e;
+                else
+                    failure.addSuppressed(e);
+            }
+        }
+        return failure;
+    }
+
+    /**
+     * Attaches a condition that the native hook shim evaluates before calling {@code hook};
+     * events for which it is false never reach Java. A condition on a watchpoint is checked
+     * after the watch condition and also gates the stop. Pass null to remove the condition.
+     * May be called while the engine is running; the replaced condition is freed once the run
+     * returns, like a deleted hook.
+     *
+     * @throws IllegalArgumentException if the condition reads a register wider than 64 bits
+     */
+    public void hook_set_condition(Hook hook, HookCondition condition) throws UnicornException
+    {
+        byte[] program = condition != null ? condition.compile(this::is_wide_reg) : null;
+        synchronized (PendingHookDeletes)
+        {
+            long old = juc_hook_set_predicate(hook_handle(hook), program);
+            if (old == 0)
+                return;
+            if (running > 0)
+                PendingPredicateFrees.add(old);
+            else
+                juc_program_free(old);
+        }
+    }
+
+    /**
+     * Switches a hook on or off without removing it from the engine. A disabled hook stays
+     * registered with unicorn, so translated code is kept, but the native shim returns before
+     * any condition, watchpoint stop or upcall. Safe to call from any thread while running.
+     */
+    public void hook_set_enabled(Hook hook, boolean enabled)
+    {
+        synchronized (PendingHookDeletes)
+        {
+            juc_hook_set_enabled(hook_handle(hook), enabled);
+        }
+    }
+
+    /**
+     * Called with the PendingHookDeletes lock held, which hook_del takes before freeing the record.
+     */
+    private long hook_handle(Hook hook)
+    {
+        HookRecord record = hooks.find(hook);
+        if (record == null)
+            throw new IllegalArgumentException("unknown hook");
+        return record.handle;
+    }
+
+    UnicornContext new_context() throws UnicornException
+    {
+        return new UnicornContext(engine, arch, mode);
     }
 
     public UnicornContext save_context() throws UnicornException
     {
-        UnicornContext context = new UnicornContext(engine);
+        UnicornContext context = new_context();
         context.save(engine);
         return context;
     }
 
     public void update_context(UnicornContext context) throws UnicornException
     {
+        context.check(arch, mode);
         context.save(engine);
     }
 
     public void restore_context(UnicornContext context) throws UnicornException
     {
+        context.check(arch, mode);
         context.restore(engine);
     }
 
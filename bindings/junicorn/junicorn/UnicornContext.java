@@ -1,14 +1,47 @@
 package junicorn;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static junicorn.UnicornConst.*;
 import static junicorn.UnicornNative.*;
 
 public class UnicornContext
 {
+    private static final int MAGIC = 0x5843554A; // "JUCX"
+
+    /**
+     * Bytes in front of the CPU state in the serialized form: magic, arch, mode, state size and the
+     * unicorn version, little endian.
+     */
+    public static final int HEADER_SIZE = 24;
+
     private long context;
 
-    UnicornContext(long engine) throws UnicornException
+    private final int arch;
+    private final int mode;
+
+    UnicornContext(long engine, int arch, int mode) throws UnicornException
     {
         this.context = uc_context_alloc(engine);
+        this.arch = arch;
+        this.mode = mode;
+    }
+
+    /**
+     * Rebuilds a context from bytes produced by {@link #toBytes(ByteBuffer)}. The header is checked
+     * against the engine: bytes from another arch, mode or unicorn version are rejected.
+     */
+    public static UnicornContext fromBytes(Unicorn uc, ByteBuffer buffer) throws UnicornException
+    {
+        UnicornContext context = uc.new_context();
+        context.readFrom(buffer);
+        return context;
+    }
+
+    public static UnicornContext fromBytes(Unicorn uc, byte[] data) throws UnicornException
+    {
+        return fromBytes(uc, ByteBuffer.wrap(data));
     }
 
     @Override
@@ -28,13 +61,147 @@ public class UnicornContext
         }
     }
 
+    public int arch()
+    {
+        return arch;
+    }
+
+    public int mode()
+    {
+        return mode;
+    }
+
+    /**
+     * Size in bytes of the serialized context, as reported by the engine that allocated it.
+     */
+    public int size()
+    {
+        return (int) juc_context_size(context);
+    }
+
+    /**
+     * Size in bytes of the serialized form, {@link #HEADER_SIZE} plus {@link #size()}.
+     */
+    public int serializedSize()
+    {
+        return HEADER_SIZE + size();
+    }
+
+    /**
+     * Writes the header and the raw CPU state at the buffer position and advances it by
+     * {@link #serializedSize()}.
+     */
+    public void toBytes(ByteBuffer buffer) throws UnicornException
+    {
+        int size = size();
+        if (buffer.remaining() < HEADER_SIZE + size)
+            throw new UnicornException("buffer too small for context", UC_ERR_ARG);
+
+        ByteBuffer header = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC);
+        header.putInt(arch);
+        header.putInt(mode);
+        header.putInt(size);
+        header.putLong(uc_version());
+        buffer.position(buffer.position() + HEADER_SIZE);
+
+        int position = buffer.position();
+        if (buffer.isDirect())
+            juc_context_read(context, buffer, position);
+        else if (buffer.hasArray())
+            juc_context_read(context, buffer.array(), buffer.arrayOffset() + position);
+        else
+        {
+            byte[] data = new byte[size];
+            juc_context_read(context, data, 0);
+            buffer.duplicate().put(data);
+        }
+
+        buffer.position(position + size);
+    }
+
+    public byte[] toBytes() throws UnicornException
+    {
+        byte[] data = new byte[serializedSize()];
+        toBytes(ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /**
+     * Clones this context into a new one owned by {@code uc}, which must have the same arch/mode.
+     */
+    public UnicornContext copy(Unicorn uc) throws UnicornException
+    {
+        UnicornContext target = uc.new_context();
+        target.check(arch, mode);
+        juc_context_copy(context, target.context);
+        return target;
+    }
+
+    void readFrom(ByteBuffer buffer) throws UnicornException
+    {
+        int size = size();
+        if (buffer.remaining() < HEADER_SIZE + size)
+            throw new UnicornException("buffer too small for context", UC_ERR_ARG);
+
+        ByteBuffer header = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (header.getInt() != MAGIC)
+            throw new UnicornException("not a serialized context", UC_ERR_ARG);
+        check(header.getInt(), header.getInt());
+        if (header.getInt() != size)
+            throw new UnicornException("context size does not match the engine", UC_ERR_ARG);
+        if (header.getLong() != uc_version())
+            throw new UnicornException(UC_ERR_VERSION);
+        buffer.position(buffer.position() + HEADER_SIZE);
+
+        int position = buffer.position();
+        if (buffer.isDirect())
+            juc_context_write(context, buffer, position);
+        else if (buffer.hasArray())
+            juc_context_write(context, buffer.array(), buffer.arrayOffset() + position);
+        else
+        {
+            byte[] data = new byte[size];
+            buffer.duplicate().get(data);
+            juc_context_write(context, data, 0);
+        }
+
+        buffer.position(position + size);
+    }
+
+    void check(int arch, int mode) throws UnicornException
+    {
+        if (this.arch != arch)
+            throw new UnicornException(UC_ERR_ARCH);
+        if (this.mode != mode)
+            throw new UnicornException(UC_ERR_MODE);
+    }
+
     void save(long engine) throws UnicornException
     {
+        EmulationEvents.ContextSave event = new EmulationEvents.ContextSave();
+        event.begin();
         uc_context_save(engine, context);
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.arch = arch;
+            event.size = size();
+            event.commit();
+        }
     }
 
     void restore(long engine) throws UnicornException
     {
+        EmulationEvents.ContextRestore event = new EmulationEvents.ContextRestore();
+        event.begin();
         uc_context_restore(engine, context);
+        event.end();
+        if (event.shouldCommit())
+        {
+            event.arch = arch;
+            event.size = size();
+            event.commit();
+        }
     }
 }
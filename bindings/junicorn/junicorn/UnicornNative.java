@@ -1,10 +1,13 @@
 package junicorn;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.util.Collection;
 
 public class UnicornNative
 {
-    private static HashMap<Long, Unicorn> EngineMap = new HashMap<>();
+    // read on every hook upcall from every emulating thread, so lookups must not take a lock or box
+    // the key; the copy on register/unregister is cheap next to uc_open/uc_close
+    private static final CopyOnWriteLongMap<Unicorn> EngineMap = new CopyOnWriteLongMap<>();
 
     @SuppressWarnings("unused")
     public native static long uc_version();
@@ -36,7 +39,25 @@ public class UnicornNative
 
     native static long uc_hook_add(long engine, int cb_type, int type, long id, long begin, long end, long arg1) throws UnicornException;
 
-    native static void uc_hook_del(long engine, long id) throws UnicornException;
+    native static void uc_hook_del(long engine, long handle) throws UnicornException;
+
+    native static void juc_hook_free(long handle);
+
+    native static long juc_hook_set_predicate(long handle, byte[] program) throws UnicornException;
+
+    native static void juc_program_free(long program);
+
+    native static void juc_hook_set_enabled(long handle, boolean enabled);
+
+    native static long juc_hook_upcalls(long handle);
+
+    native static void juc_error_counts(long[] counts);
+
+    native static void juc_hook_suppress_reset(long handle);
+
+    native static long juc_hook_suppress_count(long handle);
+
+    native static long juc_watch_add(long engine, int type, long id, long address, int size, int cond, long operand, boolean stop) throws UnicornException;
 
     native static void uc_mem_map(long engine, long address, long size, int perms) throws UnicornException;
 
@@ -58,17 +79,116 @@ public class UnicornNative
 
     native static MemoryRegion[] uc_mem_regions(long engine) throws UnicornException;
 
-    static synchronized void juc_engine_register(long engine, Unicorn uc)
+    native static void juc_mem_read(long engine, long address, ByteBuffer buffer, int offset, int size) throws UnicornException;
+
+    native static void juc_mem_write(long engine, long address, ByteBuffer buffer, int offset, int size) throws UnicornException;
+
+    native static long juc_buffer_address(ByteBuffer buffer) throws UnicornException;
+
+    native static long juc_counter_add(long engine, boolean blocks) throws UnicornException;
+
+    native static void juc_counter_del(long engine, long counter) throws UnicornException;
+
+    native static long juc_counter_read(long counter);
+
+    native static void juc_counter_reset(long counter);
+
+    native static void juc_counter_stop(long counter);
+
+    native static long juc_watchdog_add(long engine, long block_budget, int loop_threshold, int[] regs) throws UnicornException;
+
+    native static void juc_watchdog_del(long engine, long watchdog) throws UnicornException;
+
+    native static long juc_watchdog_blocks(long watchdog);
+
+    native static int juc_watchdog_reason(long watchdog);
+
+    native static void juc_watchdog_reset(long watchdog);
+
+    native static long juc_breakpoints_add(long engine) throws UnicornException;
+
+    native static void juc_breakpoints_del(long engine, long breakpoints) throws UnicornException;
+
+    native static void juc_breakpoints_set(long breakpoints, long[] addrs) throws UnicornException;
+
+    native static void juc_breakpoints_arm(long breakpoints, long begin);
+
+    native static boolean juc_breakpoints_hit(long breakpoints);
+
+    native static long juc_breakpoints_address(long breakpoints);
+
+    native static long juc_profiler_add(long engine, long interval, int max_depth, int capacity, int fp_reg, int word_size, long next_offset, long return_offset) throws UnicornException;
+
+    native static void juc_profiler_del(long engine, long profiler) throws UnicornException;
+
+    native static void juc_profiler_request(long profiler);
+
+    native static int juc_profiler_drain(long profiler, long[] out);
+
+    native static long juc_profiler_dropped(long profiler);
+
+    native static long juc_trace_add(long engine, int flags, int capacity, int pc_reg, int sp_reg, int lr_reg, int value_reg, int word_size, int syscall_insn) throws UnicornException;
+
+    native static void juc_trace_del(long engine, long trace);
+
+    native static void juc_trace_append(long trace, int type, long a, long b, long c);
+
+    native static int juc_trace_drain(long trace, long[] out);
+
+    native static long juc_trace_dropped(long trace);
+
+    native static long juc_trace_clock();
+
+    native static long juc_coverage_add(long engine) throws UnicornException;
+
+    native static void juc_coverage_del(long engine, long coverage) throws UnicornException;
+
+    native static long juc_coverage_count(long coverage);
+
+    native static long[] juc_coverage_blocks(long coverage);
+
+    native static boolean juc_coverage_overflow(long coverage);
+
+    native static void juc_coverage_reset(long coverage);
+
+    native static long juc_heatmap_add(long engine, int page_bits) throws UnicornException;
+
+    native static void juc_heatmap_del(long engine, long heatmap) throws UnicornException;
+
+    native static long[] juc_heatmap_read(long heatmap) throws UnicornException;
+
+    native static boolean juc_heatmap_overflow(long heatmap);
+
+    native static void juc_heatmap_reset(long heatmap);
+
+    native static long juc_context_size(long context);
+
+    native static void juc_context_read(long context, byte[] data, int offset) throws UnicornException;
+
+    native static void juc_context_read(long context, ByteBuffer buffer, int offset) throws UnicornException;
+
+    native static void juc_context_write(long context, byte[] data, int offset) throws UnicornException;
+
+    native static void juc_context_write(long context, ByteBuffer buffer, int offset) throws UnicornException;
+
+    native static void juc_context_copy(long source, long target);
+
+    static void juc_engine_register(long engine, Unicorn uc)
     {
         EngineMap.put(engine, uc);
     }
 
-    static synchronized void juc_engine_unregister(long engine)
+    static void juc_engine_unregister(long engine)
     {
         EngineMap.remove(engine);
     }
 
-    static synchronized Unicorn juc_engine_lookup(long engine)
+    static Collection<Unicorn> juc_engines()
+    {
+        return EngineMap.values();
+    }
+
+    static Unicorn juc_engine_lookup(long engine)
     {
         return EngineMap.get(engine);
     }
@@ -84,7 +204,53 @@ public class UnicornNative
         if (record == null)
             return 0;
 
+        LatencyHistogram latency = record.latency;
+        if (latency == null && !uc.run_accounting)
+            return dispatch(record, uc, arg1, arg2, arg3, arg4);
+
+        long start = System.nanoTime();
+        try
+        {
+            return dispatch(record, uc, arg1, arg2, arg3, arg4);
+        }
+        finally
+        {
+            long elapsed = System.nanoTime() - start;
+            if (latency != null)
+                latency.record(elapsed);
+            if (uc.run_accounting)
+                uc.account_upcall(elapsed);
+        }
+    }
+
+    private static int dispatch(HookRecord record, Unicorn uc, long arg1, long arg2, long arg3, long arg4) throws UnicornException
+    {
+        if (EmulationEvents.HOOK_DISPATCH.isEnabled() && uc.hook_sample())
+            return dispatch_recorded(record, uc, arg1, arg2, arg3, arg4);
+
         return record.handler.handle(record, uc, arg1, arg2, arg3, arg4);
     }
+
+    private static int dispatch_recorded(HookRecord record, Unicorn uc, long arg1, long arg2, long arg3, long arg4) throws UnicornException
+    {
+        EmulationEvents.HookDispatch event = new EmulationEvents.HookDispatch();
+        event.begin();
+        try
+        {
+            return record.handler.handle(record, uc, arg1, arg2, arg3, arg4);
+        }
+        finally
+        {
+            event.end();
+            if (event.shouldCommit())
+            {
+                event.hookType = record.type;
+                event.hookClass = record.hook.getClass().getName();
+                event.hookId = record.id;
+                event.arg1 = arg1;
+                event.commit();
+            }
+        }
+    }
 }
 
@@ -0,0 +1,177 @@
+package junicorn;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static junicorn.UnicornNative.*;
+
+/**
+ * {@link UnicornStatsMXBean} over every open engine. Nothing is collected eagerly: each attribute
+ * walks the engine registry and reads the native counters when it is requested, so the emulation
+ * hot path only pays for plain increments.
+ */
+public class UnicornStats implements UnicornStatsMXBean
+{
+    public static final String OBJECT_NAME = "junicorn:type=UnicornStats";
+
+    private static final String[] HOOK_TYPE_NAMES = {
+            "INTR", "INSN", "CODE", "BLOCK",
+            "MEM_READ_UNMAPPED", "MEM_WRITE_UNMAPPED", "MEM_FETCH_UNMAPPED",
+            "MEM_READ_PROT", "MEM_WRITE_PROT", "MEM_FETCH_PROT",
+            "MEM_READ", "MEM_WRITE", "MEM_FETCH", "MEM_READ_AFTER"
+    };
+
+    private static final String[] ERROR_NAMES = error_names();
+
+    /**
+     * Registers the statistics with the platform MBean server under {@link #OBJECT_NAME}, once.
+     */
+    public static ObjectName register() throws JMException
+    {
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try
+        {
+            server.registerMBean(new UnicornStats(), name);
+        }
+        catch (InstanceAlreadyExistsException ignored)
+        {
+        }
+        return name;
+    }
+
+    @Override
+    public int getLiveEngineCount()
+    {
+        return juc_engines().size();
+    }
+
+    @Override
+    public int getRunningEngineCount()
+    {
+        int count = 0;
+        for (EngineStats engine : getEngines())
+        {
+            if (engine.isRunning())
+                count++;
+        }
+        return count;
+    }
+
+    @Override
+    public long getTotalRuns()
+    {
+        long total = 0;
+        for (EngineStats engine : getEngines())
+            total += engine.getRuns();
+        return total;
+    }
+
+    @Override
+    public long getTotalEmulationNanos()
+    {
+        long total = 0;
+        for (EngineStats engine : getEngines())
+            total += engine.getEmulationNanos();
+        return total;
+    }
+
+    @Override
+    public long getTotalMappedBytes()
+    {
+        long total = 0;
+        for (EngineStats engine : getEngines())
+            total += engine.getMappedBytes();
+        return total;
+    }
+
+    @Override
+    public long getTotalHookCount()
+    {
+        long total = 0;
+        for (EngineStats engine : getEngines())
+            total += engine.getHookCount();
+        return total;
+    }
+
+    @Override
+    public long getTotalUpcalls()
+    {
+        long total = 0;
+        for (EngineStats engine : getEngines())
+            total += engine.getUpcalls();
+        return total;
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts()
+    {
+        long[] counts = new long[ERROR_NAMES.length];
+        juc_error_counts(counts);
+
+        Map<String, Long> result = new TreeMap<>();
+        for (int code = 0; code < counts.length; code++)
+        {
+            if (counts[code] != 0)
+                result.put(ERROR_NAMES[code] != null ? ERROR_NAMES[code] : "UC_ERR_" + code, counts[code]);
+        }
+        return result;
+    }
+
+    @Override
+    public EngineStats[] getEngines()
+    {
+        List<EngineStats> engines = new ArrayList<>();
+        for (Unicorn uc : juc_engines())
+        {
+            EngineStats stats = uc.stats();
+            if (stats != null)
+                engines.add(stats);
+        }
+        return engines.toArray(new EngineStats[0]);
+    }
+
+    static String hook_type_name(int type)
+    {
+        StringBuilder name = new StringBuilder();
+        for (int bit = 0; bit < 32; bit++)
+        {
+            if ((type & (1 << bit)) == 0)
+                continue;
+            if (name.length() > 0)
+                name.append('|');
+            name.append(bit < HOOK_TYPE_NAMES.length ? HOOK_TYPE_NAMES[bit] : "0x" + Integer.toHexString(1 << bit));
+        }
+        return name.toString();
+    }
+
+    // UC_ERR_* names by code, taken from the generated constants; the array length matches JUC_ERR_COUNT
+    private static String[] error_names()
+    {
+        String[] names = new String[32];
+        for (Field field : UnicornConst.class.getFields())
+        {
+            if (!field.getName().startsWith("UC_ERR_") || !Modifier.isStatic(field.getModifiers()))
+                continue;
+            try
+            {
+                int code = field.getInt(null);
+                if (code >= 0 && code < names.length)
+                    names[code] = field.getName();
+            }
+            catch (IllegalAccessException ignored)
+            {
+            }
+        }
+        return names;
+    }
+}
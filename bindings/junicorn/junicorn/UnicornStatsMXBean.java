@@ -0,0 +1,30 @@
+package junicorn;
+
+import java.util.Map;
+
+/**
+ * Process-wide emulation statistics, registered by {@link UnicornStats#register()}.
+ */
+public interface UnicornStatsMXBean
+{
+    int getLiveEngineCount();
+
+    int getRunningEngineCount();
+
+    long getTotalRuns();
+
+    long getTotalEmulationNanos();
+
+    long getTotalMappedBytes();
+
+    long getTotalHookCount();
+
+    long getTotalUpcalls();
+
+    /**
+     * Exceptions thrown by the native layer, keyed by UC_ERR_* name; codes never seen are left out.
+     */
+    Map<String, Long> getErrorCounts();
+
+    EngineStats[] getEngines();
+}
@@ -0,0 +1,73 @@
+package junicorn;
+
+import static junicorn.UnicornNative.*;
+
+/**
+ * Native block-level watchdog. Every translated block entry bumps a native counter, which is far
+ * cheaper than the per-instruction counting done for the {@code count} argument of
+ * {@code emu_start}, and does not need the helper thread behind {@code timeout}.
+ * <p>
+ * The watchdog stops the engine when the block budget is exhausted, or when the same block is
+ * entered {@code loop_threshold} times in a row with the watched registers unchanged, which catches
+ * tight infinite loops early. The budget is per run: {@code emu_start} resets the watchdog.
+ */
+public class Watchdog implements NativeCollector
+{
+    static final int REASON_NONE = 0;
+    static final int REASON_BUDGET = 1;
+    static final int REASON_LOOP = 2;
+
+    private final Unicorn uc;
+    private long watchdog;
+
+    Watchdog(Unicorn uc, long engine, long block_budget, int loop_threshold, int[] regs) throws UnicornException
+    {
+        this.uc = uc;
+        this.watchdog = juc_watchdog_add(engine, block_budget, loop_threshold, regs);
+        uc.collector_attach(this);
+    }
+
+    /**
+     * Removes the native hook. Closing the engine closes its watchdog.
+     */
+    @Override
+    @SuppressWarnings("WeakerAccess")
+    public void close() throws UnicornException
+    {
+        if (watchdog != 0)
+        {
+            uc.watchdog_del(this, watchdog);
+            watchdog = 0;
+            uc.collector_detach(this);
+        }
+    }
+
+    /**
+     * Blocks entered since the last reset.
+     */
+    public long blocks()
+    {
+        return juc_watchdog_blocks(watchdog);
+    }
+
+    /**
+     * Why the watchdog stopped the engine in the last run, or null if it did not.
+     */
+    public StopReason reason()
+    {
+        switch (juc_watchdog_reason(watchdog))
+        {
+            case REASON_BUDGET:
+                return StopReason.BUDGET;
+            case REASON_LOOP:
+                return StopReason.LOOP;
+            default:
+                return null;
+        }
+    }
+
+    public void reset()
+    {
+        juc_watchdog_reset(watchdog);
+    }
+}
@@ -3,6 +3,7 @@
 #include "uc_priv.h"
 #include <stdlib.h>
 #include <string.h>
+#include <time.h>
 #include <unicorn/unicorn.h>
 #include <unicorn/x86.h>
 #include "junicorn_UnicornNative.h"
@@ -18,6 +19,10 @@ static jfieldID fieldEngine;
 
 static JavaVM* cachedJVM;
 
+// exceptions thrown per uc_err, plain increments read lazily by junicorn.UnicornStats
+#define JUC_ERR_COUNT 32
+static jlong juc_error_counts[JUC_ERR_COUNT];
+
 typedef enum juc_hook_cb_type {
 	JUC_HOOK_CB_CODE = 1 << 0,
 	JUC_HOOK_CB_MEM_INVAILD = 1 << 1,
@@ -26,16 +31,21 @@ typedef enum juc_hook_cb_type {
 	JUC_HOOK_CB_INSN_IN = 1 << 4,
 	JUC_HOOK_CB_INSN_OUT = 1 << 5,
 	JUC_HOOK_CB_INSN_SYSCALL = 1 << 6,
+	JUC_HOOK_CB_CODE_ADAPTIVE = 1 << 7,
 } juc_hook_cb_type;
 
 static void juc_throw(JNIEnv *env, uc_err code) {
+	if ((unsigned)code < JUC_ERR_COUNT)
+		juc_error_counts[code]++;
+
 	class_juc_exception = (*env)->FindClass(env, "junicorn/UnicornException"); // always find class?
-	const char *message = uc_strerror(code);
-	// jobject exc = (*env)->NewObject(env, class_juc_exception, method_juc_exception_init, (jint)code);
-	(*env)->ThrowNew(env, class_juc_exception, message);
+	// construct through UnicornException(int) so getErrno() reports the code
+	jobject exc = (*env)->NewObject(env, class_juc_exception, method_juc_exception_init, (jint)code);
+	if (exc != NULL)
+		(*env)->Throw(env, (jthrowable)exc);
 }
 
-static jint juc_hook_cb(JavaVM *jvm, uc_engine *engine, void *user_data, jlong arg1, jlong arg2, jlong arg3, jlong arg4)
+static jint juc_hook_cb(JavaVM *jvm, uc_engine *engine, jlong id, jlong arg1, jlong arg2, jlong arg3, jlong arg4)
 {
 	JNIEnv *env;
 	(*jvm)->AttachCurrentThread(jvm, (void **)&env, NULL);
@@ -44,7 +54,7 @@ static jint juc_hook_cb(JavaVM *jvm, uc_engine *engine, void *user_data, jlong a
 		class_juc,
 		method_juc_hook_cb,
 		(jlong)engine,
-		(jlong)user_data,
+		id,
 		(jlong)arg1,
 		(jlong)arg2,
 		(jlong)arg3,
@@ -54,6 +64,97 @@ static jint juc_hook_cb(JavaVM *jvm, uc_engine *engine, void *user_data, jlong a
 	return result;
 }
 
+// open addressing table keyed by guest addresses, used by the native collectors
+typedef struct juc_table {
+	uint64_t *keys;
+	uint64_t *values;
+	uint8_t *used;
+	size_t capacity;
+	size_t count;
+} juc_table;
+
+static size_t juc_table_slot(const juc_table *table, uint64_t key)
+{
+	return (size_t)((key * 0x9e3779b97f4a7c15ULL) >> 17) & (table->capacity - 1);
+}
+
+static bool juc_table_init(juc_table *table, size_t capacity)
+{
+	size_t size = 16;
+	while (size < capacity * 2)
+		size <<= 1;
+
+	table->keys = (uint64_t *)calloc(size, sizeof(uint64_t));
+	table->values = (uint64_t *)calloc(size, sizeof(uint64_t));
+	table->used = (uint8_t *)calloc(size, sizeof(uint8_t));
+	table->capacity = size;
+	table->count = 0;
+	if (table->keys == NULL || table->values == NULL || table->used == NULL) {
+		free(table->keys);
+		free(table->values);
+		free(table->used);
+		memset(table, 0, sizeof(juc_table));
+		return false;
+	}
+	return true;
+}
+
+static void juc_table_free(juc_table *table)
+{
+	free(table->keys);
+	free(table->values);
+	free(table->used);
+	memset(table, 0, sizeof(juc_table));
+}
+
+static void juc_table_clear(juc_table *table)
+{
+	memset(table->used, 0, table->capacity);
+	table->count = 0;
+}
+
+static uint64_t *juc_table_find(const juc_table *table, uint64_t key)
+{
+	if (table->capacity == 0)
+		return NULL;
+
+	for (size_t i = juc_table_slot(table, key); table->used[i]; i = (i + 1) & (table->capacity - 1)) {
+		if (table->keys[i] == key)
+			return &table->values[i];
+	}
+	return NULL;
+}
+
+// returns the value slot for key, inserting it with value 0 if missing; NULL when out of memory
+static uint64_t *juc_table_insert(juc_table *table, uint64_t key)
+{
+	uint64_t *value = juc_table_find(table, key);
+	if (value != NULL)
+		return value;
+
+	if ((table->count + 1) * 2 > table->capacity) {
+		juc_table grown;
+		if (!juc_table_init(&grown, table->capacity))
+			return NULL;
+		for (size_t i = 0; i < table->capacity; i++) {
+			if (table->used[i])
+				*juc_table_insert(&grown, table->keys[i]) = table->values[i];
+		}
+		juc_table_free(table);
+		*table = grown;
+	}
+
+	size_t i = juc_table_slot(table, key);
+	while (table->used[i])
+		i = (i + 1) & (table->capacity - 1);
+
+	table->used[i] = 1;
+	table->keys[i] = key;
+	table->values[i] = 0;
+	table->count++;
+	return &table->values[i];
+}
+
 JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *jvm, void *reserved) {
 	JNIEnv *env;
 
@@ -269,41 +370,373 @@ JNIEXPORT void JNICALL Java_junicorn_UnicornNative_uc_1emu_1stop
 	}
 }
 
+#define JUC_PROGRAM_MAX_STACK 32
+#define JUC_PROGRAM_MAX_LENGTH 4096
+
+typedef enum juc_program_op {
+	JUC_OP_CONST = 0x01,
+	JUC_OP_REG = 0x02,
+	JUC_OP_ARG = 0x03,
+	JUC_OP_LOAD = 0x04,
+	JUC_OP_ADD = 0x10,
+	JUC_OP_SUB = 0x11,
+	JUC_OP_AND = 0x12,
+	JUC_OP_OR = 0x13,
+	JUC_OP_XOR = 0x14,
+	JUC_OP_SHL = 0x15,
+	JUC_OP_SHR = 0x16,
+	JUC_OP_EQ = 0x20,
+	JUC_OP_NE = 0x21,
+	JUC_OP_LTU = 0x22,
+	JUC_OP_LEU = 0x23,
+	JUC_OP_GTU = 0x24,
+	JUC_OP_GEU = 0x25,
+	JUC_OP_LTS = 0x26,
+	JUC_OP_LES = 0x27,
+	JUC_OP_GTS = 0x28,
+	JUC_OP_GES = 0x29,
+	JUC_OP_LAND = 0x30,
+	JUC_OP_LOR = 0x31,
+	JUC_OP_LNOT = 0x32,
+} juc_program_op;
+
+// condition compiled by junicorn.HookCondition
+typedef struct juc_program {
+	size_t length;
+	uint8_t code[];
+} juc_program;
+
+static uint64_t juc_program_imm(const uint8_t *code, int bytes)
+{
+	uint64_t value = 0;
+	for (int i = 0; i < bytes; i++)
+		value |= (uint64_t)code[i] << (i * 8);
+	return value;
+}
+
+// evaluates the program, any malformed code or failed load makes the condition false
+static bool juc_program_test(uc_engine *engine, const juc_program *program, const uint64_t args[4])
+{
+	uint64_t stack[JUC_PROGRAM_MAX_STACK];
+	int sp = 0;
+	size_t pc = 0;
+
+	while (pc < program->length) {
+		uint8_t op = program->code[pc++];
+		if (op < JUC_OP_ADD) {
+			if (sp >= JUC_PROGRAM_MAX_STACK)
+				return false;
+
+			uint64_t value = 0;
+			switch (op) {
+			case JUC_OP_CONST:
+				if (pc + 8 > program->length)
+					return false;
+				stack[sp++] = juc_program_imm(&program->code[pc], 8);
+				pc += 8;
+				break;
+			case JUC_OP_REG:
+				if (pc + 4 > program->length)
+					return false;
+				uc_reg_read(engine, (int)juc_program_imm(&program->code[pc], 4), &value);
+				stack[sp++] = value;
+				pc += 4;
+				break;
+			case JUC_OP_ARG:
+				if (pc + 1 > program->length || program->code[pc] > 3)
+					return false;
+				stack[sp++] = args[program->code[pc++]];
+				break;
+			case JUC_OP_LOAD: {
+				if (pc + 1 > program->length || sp < 1)
+					return false;
+				int size = program->code[pc++];
+				uint8_t bytes[8];
+				if (size > 8 || uc_mem_read(engine, stack[sp - 1], bytes, size) != UC_ERR_OK)
+					return false;
+				bool big_endian = (engine->mode & UC_MODE_BIG_ENDIAN) != 0;
+				for (int i = 0; i < size; i++)
+					value |= (uint64_t)bytes[i] << ((big_endian ? size - 1 - i : i) * 8);
+				stack[sp - 1] = value;
+				break;
+			}
+			default:
+				return false;
+			}
+			continue;
+		}
+
+		if (op == JUC_OP_LNOT) {
+			if (sp < 1)
+				return false;
+			stack[sp - 1] = stack[sp - 1] == 0;
+			continue;
+		}
+
+		if (sp < 2)
+			return false;
+		uint64_t b = stack[--sp];
+		uint64_t a = stack[sp - 1];
+		uint64_t r;
+		switch (op) {
+		case JUC_OP_ADD: r = a + b; break;
+		case JUC_OP_SUB: r = a - b; break;
+		case JUC_OP_AND: r = a & b; break;
+		case JUC_OP_OR: r = a | b; break;
+		case JUC_OP_XOR: r = a ^ b; break;
+		case JUC_OP_SHL: r = b < 64 ? a << b : 0; break;
+		case JUC_OP_SHR: r = b < 64 ? a >> b : 0; break;
+		case JUC_OP_EQ: r = a == b; break;
+		case JUC_OP_NE: r = a != b; break;
+		case JUC_OP_LTU: r = a < b; break;
+		case JUC_OP_LEU: r = a <= b; break;
+		case JUC_OP_GTU: r = a > b; break;
+		case JUC_OP_GEU: r = a >= b; break;
+		case JUC_OP_LTS: r = (int64_t)a < (int64_t)b; break;
+		case JUC_OP_LES: r = (int64_t)a <= (int64_t)b; break;
+		case JUC_OP_GTS: r = (int64_t)a > (int64_t)b; break;
+		case JUC_OP_GES: r = (int64_t)a >= (int64_t)b; break;
+		case JUC_OP_LAND: r = a != 0 && b != 0; break;
+		case JUC_OP_LOR: r = a != 0 || b != 0; break;
+		default:
+			return false;
+		}
+		stack[sp - 1] = r;
+	}
+
+	return sp == 1 && stack[0] != 0;
+}
+
+// widest single access a memory hook is assumed to report; unicorn splits vector accesses well below it
+#define JUC_WATCH_MAX_ACCESS 64
+
+typedef enum juc_watch_cond {
+	JUC_WATCH_ANY = 0,
+	JUC_WATCH_EQ = 1,
+	JUC_WATCH_NE = 2,
+	JUC_WATCH_LT = 3,
+	JUC_WATCH_LE = 4,
+	JUC_WATCH_GT = 5,
+	JUC_WATCH_GE = 6,
+} juc_watch_cond;
+
+typedef struct juc_watch {
+	uint64_t address;
+	uint32_t size;
+	juc_watch_cond cond;
+	uint64_t operand;
+	int stop;
+	int matched; // the condition held for the value seen by the previous overlapping access
+} juc_watch;
+
+// native side of a Java hook, passed to unicorn as the hook user_data
+typedef struct juc_hook {
+	jlong id;
+	uc_hook handle;
+	juc_watch *watch;
+	juc_program *volatile predicate; // swapped by hook_set_condition while the engine may run
+	volatile int disabled;
+	jlong upcalls;
+	juc_table *suppressed; // addresses declined by an adaptive code hook
+	volatile int suppress_reset;
+} juc_hook;
+
+static juc_hook *juc_hook_alloc(jlong id)
+{
+	juc_hook *hook = (juc_hook *)calloc(1, sizeof(juc_hook));
+	if (hook != NULL) {
+		hook->id = id;
+	}
+	return hook;
+}
+
+static void juc_hook_free(juc_hook *hook)
+{
+	free(hook->watch);
+	free(hook->predicate);
+	if (hook->suppressed != NULL) {
+		juc_table_free(hook->suppressed);
+		free(hook->suppressed);
+	}
+	free(hook);
+}
+
+static bool juc_hook_test(uc_engine *engine, juc_hook *hook, jlong arg1, jlong arg2, jlong arg3, jlong arg4)
+{
+	if (hook->disabled)
+		return false;
+	const juc_program *predicate = hook->predicate;
+	if (predicate == NULL)
+		return true;
+
+	uint64_t args[4] = { (uint64_t)arg1, (uint64_t)arg2, (uint64_t)arg3, (uint64_t)arg4 };
+	return juc_program_test(engine, predicate, args);
+}
+
+static jint juc_hook_upcall(uc_engine *engine, juc_hook *hook, jlong arg1, jlong arg2, jlong arg3, jlong arg4)
+{
+	hook->upcalls++;
+	return juc_hook_cb(cachedJVM, engine, hook->id, arg1, arg2, arg3, arg4);
+}
+
+// upcall into Java unless the hook condition rejects the event, in which case the result is 0
+static jint juc_hook_call(uc_engine *engine, juc_hook *hook, jlong arg1, jlong arg2, jlong arg3, jlong arg4)
+{
+	if (!juc_hook_test(engine, hook, arg1, arg2, arg3, arg4))
+		return 0;
+
+	return juc_hook_upcall(engine, hook, arg1, arg2, arg3, arg4);
+}
+
 static void juc_hook_code_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
 {
-	juc_hook_cb(cachedJVM, engine, user_data, address, size, 0, 0);
+	juc_hook *hook = (juc_hook *)user_data;
+	juc_hook_call(engine, hook, address, size, 0, 0);
+}
+
+static void juc_hook_code_adaptive_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_hook *hook = (juc_hook *)user_data;
+	juc_table *suppressed = hook->suppressed;
+
+	// reset requests may come from any thread, the table itself is only touched here
+	if (hook->suppress_reset) {
+		hook->suppress_reset = 0;
+		juc_table_clear(suppressed);
+	}
+
+	if (juc_table_find(suppressed, address) != NULL)
+		return;
+	if (!juc_hook_test(engine, hook, address, size, 0, 0))
+		return;
+
+	// the Java handler returns non-zero when the hook declined this address
+	if (juc_hook_upcall(engine, hook, address, size, 0, 0) != 0)
+		juc_table_insert(suppressed, address);
 }
 
 static bool juc_hook_mem_invaild_cb(uc_engine *engine, uc_mem_type type, uint64_t address, int size, int64_t value, void *user_data)
 {
-	jint result = juc_hook_cb(cachedJVM, engine, user_data, type, address, size, value);
+	juc_hook *hook = (juc_hook *)user_data;
+	jint result = juc_hook_call(engine, hook, type, address, size, value);
 	return result > 0 ? true : false;
 }
 
 static void juc_hook_mem_access_cb(uc_engine *engine, uc_mem_type type, uint64_t address, int size, int64_t value, void *user_data)
 {
-	juc_hook_cb(cachedJVM, engine, user_data, type, address, size, value);
+	juc_hook *hook = (juc_hook *)user_data;
+	juc_hook_call(engine, hook, type, address, size, value);
 }
 
 static void juc_hook_intr_cb(uc_engine *engine, uint32_t intno, void *user_data)
 {
-	juc_hook_cb(cachedJVM, engine, user_data, intno, 0, 0, 0);
+	juc_hook *hook = (juc_hook *)user_data;
+	juc_hook_call(engine, hook, intno, 0, 0, 0);
 }
 
 static uint32_t juc_hook_insn_in_cb(uc_engine *engine, uint32_t port, int size, void *user_data)
 {
-	jint result = juc_hook_cb(cachedJVM, engine, user_data, port, size, 0, 0);
+	juc_hook *hook = (juc_hook *)user_data;
+	jint result = juc_hook_call(engine, hook, port, size, 0, 0);
 	return (uint32_t)result;
 }
 
 static void juc_hook_insn_out_cb(uc_engine *engine, uint32_t port, int size, uint32_t value, void *user_data)
 {
-	juc_hook_cb(cachedJVM, engine, user_data, port, size, value, 0);
+	juc_hook *hook = (juc_hook *)user_data;
+	juc_hook_call(engine, hook, port, size, value, 0);
 }
 
 static void juc_hook_insn_syscall_cb(uc_engine *engine, void *user_data)
 {
-	juc_hook_cb(cachedJVM, engine, user_data, 0, 0, 0, 0);
+	juc_hook *hook = (juc_hook *)user_data;
+	juc_hook_call(engine, hook, 0, 0, 0, 0);
+}
+
+static uint64_t juc_watch_decode(const uint8_t *bytes, uint32_t size, bool big_endian)
+{
+	uint64_t result = 0;
+	for (uint32_t i = 0; i < size; i++) {
+		int shift = big_endian ? (size - 1 - i) * 8 : i * 8;
+		result |= (uint64_t)bytes[i] << shift;
+	}
+	return result;
+}
+
+// value of the watched range before and after the access: written bytes are laid over the old contents
+static bool juc_watch_value(uc_engine *engine, juc_watch *watch, uc_mem_type type, uint64_t address, int size, int64_t value, uint64_t *before, uint64_t *after)
+{
+	uint8_t bytes[8];
+	if (uc_mem_read(engine, watch->address, bytes, watch->size) != UC_ERR_OK)
+		return false;
+
+	bool big_endian = (engine->mode & UC_MODE_BIG_ENDIAN) != 0;
+	*before = juc_watch_decode(bytes, watch->size, big_endian);
+	if (type == UC_MEM_WRITE) {
+		for (int i = 0; i < size; i++) {
+			uint64_t at = address + i;
+			if (at < watch->address || at >= watch->address + watch->size)
+				continue;
+			int shift = big_endian ? (size - 1 - i) * 8 : i * 8;
+			bytes[at - watch->address] = (uint8_t)((uint64_t)value >> shift);
+		}
+	}
+	*after = juc_watch_decode(bytes, watch->size, big_endian);
+	return true;
+}
+
+static bool juc_watch_test(juc_watch *watch, uint64_t value)
+{
+	switch (watch->cond) {
+	case JUC_WATCH_EQ:
+		return value == watch->operand;
+	case JUC_WATCH_NE:
+		return value != watch->operand;
+	case JUC_WATCH_LT:
+		return value < watch->operand;
+	case JUC_WATCH_LE:
+		return value <= watch->operand;
+	case JUC_WATCH_GT:
+		return value > watch->operand;
+	case JUC_WATCH_GE:
+		return value >= watch->operand;
+	default:
+		return true;
+	}
+}
+
+static void juc_hook_watch_cb(uc_engine *engine, uc_mem_type type, uint64_t address, int size, int64_t value, void *user_data)
+{
+	juc_hook *hook = (juc_hook *)user_data;
+	juc_watch *watch = hook->watch;
+
+	// unicorn only bounds the start of the access, the overlap test is exact
+	if (address >= watch->address + watch->size || address + (uint64_t)size <= watch->address)
+		return;
+
+	if (watch->cond != JUC_WATCH_ANY) {
+		uint64_t before, after;
+		if (!juc_watch_value(engine, watch, type, address, size, value, &before, &after))
+			return;
+
+		// edge triggered: a write is compared with the bytes it overwrites, a read with the value
+		// the previous overlapping access left behind
+		bool held = type == UC_MEM_WRITE ? juc_watch_test(watch, before) : watch->matched;
+		bool holds = juc_watch_test(watch, after);
+		watch->matched = holds;
+		if (!holds || held)
+			return;
+	}
+
+	if (!juc_hook_test(engine, hook, type, address, size, value))
+		return;
+
+	if (watch->stop) {
+		uc_emu_stop(engine);
+	}
+	if (hook->id != 0) {
+		juc_hook_upcall(engine, hook, type, address, size, value);
+	}
 }
 
 /*
@@ -314,40 +747,57 @@ static void juc_hook_insn_syscall_cb(uc_engine *engine, void *user_data)
 JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_uc_1hook_1add
 (JNIEnv *env, jclass cls, jlong engine, jint cb_type, jint type, jlong id, jlong begin, jlong end, jlong arg1)
 {
-	uc_hook hook = 0;
 	uc_engine *uc = (uc_engine *)engine;
 	uc_err code;
-	
+
+	juc_hook *hook = juc_hook_alloc(id);
+	if (hook == NULL) {
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	if (cb_type == JUC_HOOK_CB_CODE_ADAPTIVE) {
+		hook->suppressed = (juc_table *)calloc(1, sizeof(juc_table));
+		if (hook->suppressed == NULL || !juc_table_init(hook->suppressed, 256)) {
+			juc_hook_free(hook);
+			juc_throw(env, UC_ERR_NOMEM);
+			return 0;
+		}
+	}
+
 	juc_hook_cb_type cbt = (juc_hook_cb_type)cb_type;
 	switch (cbt)
 	{
 	case JUC_HOOK_CB_CODE:
-		code = uc_hook_add(uc, &hook, (int)type, juc_hook_code_cb, (void *)id, (uint64_t)begin, (uint64_t)end);
+		code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_code_cb, (void *)hook, (uint64_t)begin, (uint64_t)end);
+		break;
+	case JUC_HOOK_CB_CODE_ADAPTIVE:
+		code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_code_adaptive_cb, (void *)hook, (uint64_t)begin, (uint64_t)end);
 		break;
 	case JUC_HOOK_CB_MEM_INVAILD:
-		code = uc_hook_add(uc, &hook, (int)type, juc_hook_mem_invaild_cb, (void *)id, (uint64_t)begin, (uint64_t)end);
+		code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_mem_invaild_cb, (void *)hook, (uint64_t)begin, (uint64_t)end);
 		break;
 	case JUC_HOOK_CB_MEM_ACCESS:
-		code = uc_hook_add(uc, &hook, (int)type, juc_hook_mem_access_cb, (void *)id, (uint64_t)begin, (uint64_t)end);
+		code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_mem_access_cb, (void *)hook, (uint64_t)begin, (uint64_t)end);
 		break;
 	case JUC_HOOK_CB_INTR_CB:
-		code = uc_hook_add(uc, &hook, (int)type, juc_hook_intr_cb, (void *)id, (uint64_t)begin, (uint64_t)end);
+		code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_intr_cb, (void *)hook, (uint64_t)begin, (uint64_t)end);
 		break;
 	case JUC_HOOK_CB_INSN_IN:
-		code = uc_hook_add(uc, &hook, (int)type, juc_hook_insn_in_cb, (void *)id, (uint64_t)begin, (uint64_t)end, (int)arg1);
+		code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_insn_in_cb, (void *)hook, (uint64_t)begin, (uint64_t)end, (int)arg1);
 		break;
 	case JUC_HOOK_CB_INSN_OUT:
-		code = uc_hook_add(uc, &hook, (int)type, juc_hook_insn_out_cb, (void *)id, (uint64_t)begin, (uint64_t)end, (int)arg1);
+		code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_insn_out_cb, (void *)hook, (uint64_t)begin, (uint64_t)end, (int)arg1);
 		break;
 	case JUC_HOOK_CB_INSN_SYSCALL:
-		code = uc_hook_add(uc, &hook, (int)type, juc_hook_insn_syscall_cb, (void *)id, (uint64_t)begin, (uint64_t)end, (int)arg1);
+		code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_insn_syscall_cb, (void *)hook, (uint64_t)begin, (uint64_t)end, (int)arg1);
 		break;
 	default:
-		code = UC_ERR_OK;
-		juc_throw(env, code);
+		code = UC_ERR_ARG;
 	}
 
 	if (code != UC_ERR_OK) {
+		juc_hook_free(hook);
 		juc_throw(env, code);
 		return 0;
 	}
@@ -361,14 +811,79 @@ JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_uc_1hook_1add
  * Signature: (JJ)V
  */
 JNIEXPORT void JNICALL Java_junicorn_UnicornNative_uc_1hook_1del
-(JNIEnv *env, jclass cls, jlong engine, jlong id)
+(JNIEnv *env, jclass cls, jlong engine, jlong handle)
+{
+	juc_hook *hook = (juc_hook *)handle;
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = uc_hook_del(uc, hook->handle);
+	juc_hook_free(hook);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_free
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1hook_1free
+(JNIEnv *env, jclass cls, jlong handle)
+{
+	juc_hook_free((juc_hook *)handle);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watch_add
+ * Signature: (JIJJIIJZ)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1watch_1add
+(JNIEnv *env, jclass cls, jlong engine, jint type, jlong id, jlong address, jint size, jint cond, jlong operand, jboolean stop)
 {
-	uc_hook hook = (uc_hook)id;
 	uc_engine *uc = (uc_engine *)engine;
-	uc_err code = uc_hook_del(uc, hook);
+	// a value condition decodes the range as one integer, JUC_WATCH_ANY only tests the overlap
+	bool sized = size == 1 || size == 2 || size == 4 || size == 8;
+	if ((cond != JUC_WATCH_ANY && !sized) || size <= 0 || (uint64_t)address + (uint64_t)size - 1 < (uint64_t)address) {
+		juc_throw(env, UC_ERR_ARG);
+		return 0;
+	}
+
+	juc_hook *hook = juc_hook_alloc(id);
+	juc_watch *watch = (juc_watch *)calloc(1, sizeof(juc_watch));
+	if (hook == NULL || watch == NULL) {
+		free(hook);
+		free(watch);
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	watch->address = (uint64_t)address;
+	watch->size = (uint32_t)size;
+	watch->cond = (juc_watch_cond)cond;
+	watch->operand = (uint64_t)operand;
+	watch->stop = stop ? 1 : 0;
+	hook->watch = watch;
+
+	if (watch->cond != JUC_WATCH_ANY) {
+		uint8_t bytes[8];
+		if (uc_mem_read(uc, watch->address, bytes, watch->size) == UC_ERR_OK) {
+			bool big_endian = (uc->mode & UC_MODE_BIG_ENDIAN) != 0;
+			watch->matched = juc_watch_test(watch, juc_watch_decode(bytes, watch->size, big_endian));
+		}
+	}
+
+	// wide accesses starting just below the range still overlap it, the callback tests the overlap
+	uint64_t begin = watch->address >= JUC_WATCH_MAX_ACCESS - 1 ? watch->address - (JUC_WATCH_MAX_ACCESS - 1) : 0;
+	uint64_t end = watch->address + watch->size - 1;
+	uc_err code = uc_hook_add(uc, &hook->handle, (int)type, juc_hook_watch_cb, (void *)hook, begin, end);
 	if (code != UC_ERR_OK) {
+		juc_hook_free(hook);
 		juc_throw(env, code);
+		return 0;
 	}
+
+	return (jlong)hook;
 }
 
 /*
@@ -479,7 +994,7 @@ JNIEXPORT void JNICALL Java_junicorn_UnicornNative_uc_1free
 (JNIEnv *env, jclass cls, jlong context)
 {
 	uc_context *ctx = (uc_context *)context;
-	uc_err code = uc_free(&ctx);
+	uc_err code = uc_free(ctx);
 	if (code != UC_ERR_OK) {
 		juc_throw(env, code);
 	}
@@ -553,3 +1068,1559 @@ JNIEXPORT jobjectArray JNICALL Java_junicorn_UnicornNative_uc_1mem_1regions
 	uc_free(regions);
 	return arr;
 }
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_mem_read
+ * Signature: (JJLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1mem_1read
+(JNIEnv *env, jclass cls, jlong engine, jlong address, jobject buffer, jint offset, jint size)
+{
+	char *bytes = (char *)(*env)->GetDirectBufferAddress(env, buffer);
+	if (bytes == NULL) {
+		juc_throw(env, UC_ERR_ARG);
+		return;
+	}
+
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = uc_mem_read(uc, (uint64_t)address, (void *)(bytes + offset), (size_t)size);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_mem_write
+ * Signature: (JJLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1mem_1write
+(JNIEnv *env, jclass cls, jlong engine, jlong address, jobject buffer, jint offset, jint size)
+{
+	char *bytes = (char *)(*env)->GetDirectBufferAddress(env, buffer);
+	if (bytes == NULL) {
+		juc_throw(env, UC_ERR_ARG);
+		return;
+	}
+
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = uc_mem_write(uc, (uint64_t)address, (const void *)(bytes + offset), (size_t)size);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_buffer_address
+ * Signature: (Ljava/nio/ByteBuffer;)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1buffer_1address
+(JNIEnv *env, jclass cls, jobject buffer)
+{
+	void *bytes = (*env)->GetDirectBufferAddress(env, buffer);
+	if (bytes == NULL) {
+		juc_throw(env, UC_ERR_ARG);
+		return 0;
+	}
+
+	return (jlong)bytes;
+}
+
+// counts instructions, or block entries when hooked on UC_HOOK_BLOCK
+typedef struct juc_counter {
+	uc_hook hook;
+	volatile uint64_t count;
+	volatile int stop;
+} juc_counter;
+
+static void juc_counter_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_counter *counter = (juc_counter *)user_data;
+	counter->count++;
+	if (counter->stop) {
+		uc_emu_stop(engine);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_add
+ * Signature: (JZ)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1counter_1add
+(JNIEnv *env, jclass cls, jlong engine, jboolean blocks)
+{
+	uc_engine *uc = (uc_engine *)engine;
+	juc_counter *counter = (juc_counter *)calloc(1, sizeof(juc_counter));
+	if (counter == NULL) {
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	uc_err code = uc_hook_add(uc, &counter->hook, blocks ? UC_HOOK_BLOCK : UC_HOOK_CODE, juc_counter_cb, (void *)counter, 1, 0);
+	if (code != UC_ERR_OK) {
+		free(counter);
+		juc_throw(env, code);
+		return 0;
+	}
+
+	return (jlong)counter;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1counter_1del
+(JNIEnv *env, jclass cls, jlong engine, jlong ptr)
+{
+	juc_counter *counter = (juc_counter *)ptr;
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = UC_ERR_OK;
+	if (uc != NULL) {
+		code = uc_hook_del(uc, counter->hook);
+	}
+
+	free(counter);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_read
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1counter_1read
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_counter *counter = (juc_counter *)ptr;
+	return (jlong)counter->count;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1counter_1reset
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_counter *counter = (juc_counter *)ptr;
+	counter->count = 0;
+	counter->stop = 0;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_stop
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1counter_1stop
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_counter *counter = (juc_counter *)ptr;
+	counter->stop = 1;
+}
+
+#define JUC_WATCHDOG_MAX_REGS 64
+
+typedef enum juc_watchdog_reason {
+	JUC_WATCHDOG_NONE = 0,
+	JUC_WATCHDOG_BUDGET = 1,
+	JUC_WATCHDOG_LOOP = 2,
+} juc_watchdog_reason;
+
+typedef struct juc_watchdog {
+	uc_hook hook;
+	uint64_t block_budget;
+	volatile uint64_t blocks;
+	uint32_t loop_threshold;
+	uint32_t repeats;
+	uint64_t last_address;
+	uint64_t last_state;
+	int state_valid;
+	int reg_count;
+	int regs[JUC_WATCHDOG_MAX_REGS];
+	volatile int reason;
+} juc_watchdog;
+
+static uint64_t juc_watchdog_state(uc_engine *engine, juc_watchdog *watchdog)
+{
+	// FNV-1a over the watched register values
+	uint64_t hash = 0xcbf29ce484222325ULL;
+	for (int i = 0; i < watchdog->reg_count; i++) {
+		uint64_t value = 0;
+		uc_reg_read(engine, watchdog->regs[i], &value);
+		hash = (hash ^ value) * 0x100000001b3ULL;
+	}
+	return hash;
+}
+
+static void juc_watchdog_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_watchdog *watchdog = (juc_watchdog *)user_data;
+
+	watchdog->blocks++;
+	if (watchdog->block_budget != 0 && watchdog->blocks > watchdog->block_budget) {
+		watchdog->reason = JUC_WATCHDOG_BUDGET;
+		uc_emu_stop(engine);
+		return;
+	}
+
+	if (watchdog->loop_threshold == 0)
+		return;
+
+	// registers are only read while one block keeps repeating
+	if (address != watchdog->last_address) {
+		watchdog->last_address = address;
+		watchdog->repeats = 0;
+		watchdog->state_valid = 0;
+		return;
+	}
+
+	uint64_t state = juc_watchdog_state(engine, watchdog);
+	if (watchdog->state_valid && state == watchdog->last_state) {
+		if (++watchdog->repeats >= watchdog->loop_threshold) {
+			watchdog->reason = JUC_WATCHDOG_LOOP;
+			uc_emu_stop(engine);
+		}
+	} else {
+		watchdog->repeats = 0;
+	}
+
+	watchdog->last_state = state;
+	watchdog->state_valid = 1;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_add
+ * Signature: (JJI[I)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1add
+(JNIEnv *env, jclass cls, jlong engine, jlong block_budget, jint loop_threshold, jintArray regs)
+{
+	uc_engine *uc = (uc_engine *)engine;
+	jsize reg_count = regs != NULL ? (*env)->GetArrayLength(env, regs) : 0;
+	// the state registers are read into a uint64_t, the Java side rejects wider ones
+	if (reg_count > JUC_WATCHDOG_MAX_REGS || block_budget < 0 || loop_threshold < 0
+			|| (loop_threshold > 0 && reg_count == 0)) {
+		juc_throw(env, UC_ERR_ARG);
+		return 0;
+	}
+
+	juc_watchdog *watchdog = (juc_watchdog *)calloc(1, sizeof(juc_watchdog));
+	if (watchdog == NULL) {
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	watchdog->block_budget = (uint64_t)block_budget;
+	watchdog->loop_threshold = (uint32_t)loop_threshold;
+	watchdog->reg_count = (int)reg_count;
+	if (reg_count > 0) {
+		(*env)->GetIntArrayRegion(env, regs, 0, reg_count, (jint *)watchdog->regs);
+	}
+
+	uc_err code = uc_hook_add(uc, &watchdog->hook, UC_HOOK_BLOCK, juc_watchdog_cb, (void *)watchdog, 1, 0);
+	if (code != UC_ERR_OK) {
+		free(watchdog);
+		juc_throw(env, code);
+		return 0;
+	}
+
+	return (jlong)watchdog;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1del
+(JNIEnv *env, jclass cls, jlong engine, jlong ptr)
+{
+	juc_watchdog *watchdog = (juc_watchdog *)ptr;
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = UC_ERR_OK;
+	if (uc != NULL) {
+		code = uc_hook_del(uc, watchdog->hook);
+	}
+
+	free(watchdog);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_blocks
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1blocks
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_watchdog *watchdog = (juc_watchdog *)ptr;
+	return (jlong)watchdog->blocks;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_reason
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1reason
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_watchdog *watchdog = (juc_watchdog *)ptr;
+	return (jint)watchdog->reason;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1reset
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_watchdog *watchdog = (juc_watchdog *)ptr;
+	watchdog->blocks = 0;
+	watchdog->repeats = 0;
+	watchdog->last_address = 0;
+	watchdog->state_valid = 0;
+	watchdog->reason = JUC_WATCHDOG_NONE;
+}
+
+typedef struct juc_breakpoints {
+	uc_hook block_hook;
+	uc_hook code_hook;
+	juc_table set;
+	uint64_t *sorted;
+	size_t count;
+	int armed;
+	uint64_t skip;
+	int skip_valid;
+	volatile uint64_t hit;
+	volatile int hit_valid;
+} juc_breakpoints;
+
+static int juc_compare_u64(const void *a, const void *b)
+{
+	uint64_t x = *(const uint64_t *)a;
+	uint64_t y = *(const uint64_t *)b;
+	return x < y ? -1 : x > y ? 1 : 0;
+}
+
+static void juc_breakpoints_block_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_breakpoints *bp = (juc_breakpoints *)user_data;
+
+	// only the first block of a run may start at the address being resumed from
+	if (bp->skip_valid && address != bp->skip)
+		bp->skip_valid = 0;
+
+	// arm the per-instruction check only for blocks that contain a breakpoint
+	size_t lo = 0, hi = bp->count;
+	while (lo < hi) {
+		size_t mid = (lo + hi) >> 1;
+		if (bp->sorted[mid] < address)
+			lo = mid + 1;
+		else
+			hi = mid;
+	}
+	bp->armed = lo < bp->count && bp->sorted[lo] - address < size;
+}
+
+static void juc_breakpoints_code_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_breakpoints *bp = (juc_breakpoints *)user_data;
+	if (!bp->armed)
+		return;
+
+	if (bp->skip_valid) {
+		bp->skip_valid = 0;
+		if (address == bp->skip)
+			return;
+	}
+
+	if (juc_table_find(&bp->set, address) != NULL) {
+		bp->hit = address;
+		bp->hit_valid = 1;
+		uc_emu_stop(engine);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_add
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1add
+(JNIEnv *env, jclass cls, jlong engine)
+{
+	uc_engine *uc = (uc_engine *)engine;
+	juc_breakpoints *bp = (juc_breakpoints *)calloc(1, sizeof(juc_breakpoints));
+	if (bp == NULL) {
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	uc_err code = uc_hook_add(uc, &bp->block_hook, UC_HOOK_BLOCK, juc_breakpoints_block_cb, (void *)bp, 1, 0);
+	if (code == UC_ERR_OK) {
+		code = uc_hook_add(uc, &bp->code_hook, UC_HOOK_CODE, juc_breakpoints_code_cb, (void *)bp, 1, 0);
+		if (code != UC_ERR_OK) {
+			uc_hook_del(uc, bp->block_hook);
+		}
+	}
+
+	if (code != UC_ERR_OK) {
+		free(bp);
+		juc_throw(env, code);
+		return 0;
+	}
+
+	return (jlong)bp;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1del
+(JNIEnv *env, jclass cls, jlong engine, jlong ptr)
+{
+	juc_breakpoints *bp = (juc_breakpoints *)ptr;
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = UC_ERR_OK;
+	if (uc != NULL) {
+		code = uc_hook_del(uc, bp->block_hook);
+		uc_err code_hook = uc_hook_del(uc, bp->code_hook);
+		if (code == UC_ERR_OK)
+			code = code_hook;
+	}
+
+	juc_table_free(&bp->set);
+	free(bp->sorted);
+	free(bp);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_set
+ * Signature: (J[J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1set
+(JNIEnv *env, jclass cls, jlong ptr, jlongArray addrs)
+{
+	juc_breakpoints *bp = (juc_breakpoints *)ptr;
+	jsize count = (*env)->GetArrayLength(env, addrs);
+
+	juc_table set;
+	uint64_t *sorted = (uint64_t *)malloc((count > 0 ? count : 1) * sizeof(uint64_t));
+	if (sorted == NULL || !juc_table_init(&set, (size_t)count)) {
+		free(sorted);
+		juc_throw(env, UC_ERR_NOMEM);
+		return;
+	}
+
+	(*env)->GetLongArrayRegion(env, addrs, 0, count, (jlong *)sorted);
+	qsort(sorted, (size_t)count, sizeof(uint64_t), juc_compare_u64);
+	for (jsize i = 0; i < count; i++) {
+		juc_table_insert(&set, sorted[i]);
+	}
+
+	juc_table_free(&bp->set);
+	free(bp->sorted);
+	bp->set = set;
+	bp->sorted = sorted;
+	bp->count = (size_t)count;
+	bp->armed = 0;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_arm
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1arm
+(JNIEnv *env, jclass cls, jlong ptr, jlong begin)
+{
+	juc_breakpoints *bp = (juc_breakpoints *)ptr;
+	bp->hit_valid = 0;
+	bp->hit = 0;
+	bp->skip = (uint64_t)begin;
+	bp->skip_valid = 1;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_hit
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1hit
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_breakpoints *bp = (juc_breakpoints *)ptr;
+	return bp->hit_valid ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_address
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1address
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_breakpoints *bp = (juc_breakpoints *)ptr;
+	return (jlong)bp->hit;
+}
+
+#define JUC_PROFILER_MAX_DEPTH 64
+
+typedef struct juc_profiler {
+	uc_hook hook;
+	uint64_t interval;
+	uint64_t countdown;
+	volatile int pending;
+	int fp_reg;
+	int word_size;
+	int64_t next_offset;
+	int64_t return_offset;
+	int max_depth;
+	size_t stride;
+	size_t capacity;
+	uint64_t *ring;
+	volatile uint64_t head;
+	volatile uint64_t tail;
+	volatile uint64_t dropped;
+} juc_profiler;
+
+static bool juc_profiler_word(uc_engine *engine, juc_profiler *profiler, uint64_t address, uint64_t *value)
+{
+	uint8_t bytes[8];
+	int size = profiler->word_size;
+	if (uc_mem_read(engine, address, bytes, size) != UC_ERR_OK)
+		return false;
+
+	bool big_endian = (engine->mode & UC_MODE_BIG_ENDIAN) != 0;
+	*value = 0;
+	for (int i = 0; i < size; i++)
+		*value |= (uint64_t)bytes[i] << ((big_endian ? size - 1 - i : i) * 8);
+	return true;
+}
+
+// records the block address and the return addresses found by walking the frame pointer chain
+static void juc_profiler_sample(uc_engine *engine, juc_profiler *profiler, uint64_t address)
+{
+	uint64_t head = profiler->head;
+	if (head - profiler->tail >= profiler->capacity) {
+		profiler->dropped++;
+		return;
+	}
+
+	uint64_t *record = &profiler->ring[(head & (profiler->capacity - 1)) * profiler->stride];
+	int depth = 0;
+	record[1] = address;
+
+	uint64_t fp = 0;
+	if (profiler->max_depth > 0)
+		uc_reg_read(engine, profiler->fp_reg, &fp);
+	if (profiler->word_size == 4)
+		fp &= 0xffffffffULL;
+
+	while (depth < profiler->max_depth && fp != 0) {
+		uint64_t ret, next;
+		if (!juc_profiler_word(engine, profiler, fp + profiler->return_offset, &ret) ||
+			!juc_profiler_word(engine, profiler, fp + profiler->next_offset, &next) || ret == 0)
+			break;
+		record[2 + depth++] = ret;
+		// stacks grow down, anything else is a corrupt or foreign chain
+		if (next <= fp)
+			break;
+		fp = next;
+	}
+
+	record[0] = (uint64_t)depth;
+	__sync_synchronize();
+	profiler->head = head + 1;
+}
+
+static void juc_profiler_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_profiler *profiler = (juc_profiler *)user_data;
+	bool due = profiler->interval != 0 && --profiler->countdown == 0;
+	if (!due && !profiler->pending)
+		return;
+
+	profiler->countdown = profiler->interval;
+	profiler->pending = 0;
+	juc_profiler_sample(engine, profiler, address);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_add
+ * Signature: (JJIIIIJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1profiler_1add
+(JNIEnv *env, jclass cls, jlong engine, jlong interval, jint max_depth, jint capacity, jint fp_reg, jint word_size, jlong next_offset, jlong return_offset)
+{
+	uc_engine *uc = (uc_engine *)engine;
+	if (interval < 0 || max_depth < 0 || max_depth > JUC_PROFILER_MAX_DEPTH || capacity <= 0 ||
+		(capacity & (capacity - 1)) != 0 || (word_size != 4 && word_size != 8)) {
+		juc_throw(env, UC_ERR_ARG);
+		return 0;
+	}
+
+	juc_profiler *profiler = (juc_profiler *)calloc(1, sizeof(juc_profiler));
+	if (profiler == NULL) {
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	profiler->interval = (uint64_t)interval;
+	profiler->countdown = (uint64_t)interval;
+	profiler->fp_reg = fp_reg;
+	profiler->word_size = word_size;
+	profiler->next_offset = next_offset;
+	profiler->return_offset = return_offset;
+	profiler->max_depth = max_depth;
+	profiler->stride = (size_t)max_depth + 2;
+	profiler->capacity = (size_t)capacity;
+	profiler->ring = (uint64_t *)calloc(profiler->capacity * profiler->stride, sizeof(uint64_t));
+	if (profiler->ring == NULL) {
+		free(profiler);
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	uc_err code = uc_hook_add(uc, &profiler->hook, UC_HOOK_BLOCK, juc_profiler_cb, (void *)profiler, 1, 0);
+	if (code != UC_ERR_OK) {
+		free(profiler->ring);
+		free(profiler);
+		juc_throw(env, code);
+		return 0;
+	}
+
+	return (jlong)profiler;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1profiler_1del
+(JNIEnv *env, jclass cls, jlong engine, jlong ptr)
+{
+	juc_profiler *profiler = (juc_profiler *)ptr;
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = UC_ERR_OK;
+	if (uc != NULL) {
+		code = uc_hook_del(uc, profiler->hook);
+	}
+
+	free(profiler->ring);
+	free(profiler);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_request
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1profiler_1request
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_profiler *profiler = (juc_profiler *)ptr;
+	profiler->pending = 1;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_drain
+ * Signature: (J[J)I
+ */
+JNIEXPORT jint JNICALL Java_junicorn_UnicornNative_juc_1profiler_1drain
+(JNIEnv *env, jclass cls, jlong ptr, jlongArray out)
+{
+	juc_profiler *profiler = (juc_profiler *)ptr;
+	size_t room = (size_t)(*env)->GetArrayLength(env, out) / profiler->stride;
+	uint64_t tail = profiler->tail;
+	uint64_t head = profiler->head;
+	__sync_synchronize();
+
+	size_t count = (size_t)(head - tail);
+	if (count > room)
+		count = room;
+
+	for (size_t i = 0; i < count; i++) {
+		uint64_t *record = &profiler->ring[((tail + i) & (profiler->capacity - 1)) * profiler->stride];
+		(*env)->SetLongArrayRegion(env, out, (jsize)(i * profiler->stride), (jsize)profiler->stride, (jlong *)record);
+	}
+
+	__sync_synchronize();
+	profiler->tail = tail + count;
+	return (jint)count;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_dropped
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1profiler_1dropped
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_profiler *profiler = (juc_profiler *)ptr;
+	return (jlong)profiler->dropped;
+}
+
+#define JUC_TRACE_MAX_DEPTH 256
+#define JUC_TRACE_RECORD 5
+
+typedef enum juc_trace_flag {
+	JUC_TRACE_CALLS = 1 << 0,
+	JUC_TRACE_INTERRUPTS = 1 << 1,
+	JUC_TRACE_SYSCALLS = 1 << 2,
+} juc_trace_flag;
+
+typedef enum juc_trace_type {
+	JUC_TRACE_RUN_BEGIN = 1,
+	JUC_TRACE_RUN_END = 2,
+	JUC_TRACE_CALL = 3,
+	JUC_TRACE_RET = 4,
+	JUC_TRACE_INTR = 5,
+	JUC_TRACE_SYSCALL = 6,
+	JUC_TRACE_MAP = 7,
+	JUC_TRACE_UNMAP = 8,
+	JUC_TRACE_PROTECT = 9,
+} juc_trace_type;
+
+typedef struct juc_trace {
+	uc_hook block_hook;
+	uc_hook intr_hook;
+	uc_hook syscall_hook;
+	int pc_reg;
+	int sp_reg;
+	int lr_reg;
+	int value_reg;
+	int word_size;
+	uint64_t last_end;
+	uint64_t stack[JUC_TRACE_MAX_DEPTH];
+	int depth;
+	size_t capacity;
+	uint64_t *ring;
+	volatile uint64_t head;
+	volatile uint64_t tail;
+	volatile uint64_t dropped;
+} juc_trace;
+
+static uint64_t juc_trace_now(void)
+{
+	struct timespec ts;
+	clock_gettime(CLOCK_MONOTONIC, &ts);
+	return (uint64_t)ts.tv_sec * 1000000000ULL + (uint64_t)ts.tv_nsec;
+}
+
+// single producer: only the thread running the engine appends, Unicorn.trace_event drops Java-side
+// records from other threads while a run is in progress
+static void juc_trace_append(juc_trace *trace, juc_trace_type type, uint64_t a, uint64_t b, uint64_t c)
+{
+	uint64_t head = trace->head;
+	if (head - trace->tail >= trace->capacity) {
+		trace->dropped++;
+		return;
+	}
+
+	uint64_t *record = &trace->ring[(head & (trace->capacity - 1)) * JUC_TRACE_RECORD];
+	record[0] = juc_trace_now();
+	record[1] = (uint64_t)type;
+	record[2] = a;
+	record[3] = b;
+	record[4] = c;
+	__sync_synchronize();
+	trace->head = head + 1;
+}
+
+static uint64_t juc_trace_reg(uc_engine *engine, juc_trace *trace, int regid)
+{
+	uint64_t value = 0;
+	if (regid >= 0)
+		uc_reg_read(engine, regid, &value);
+	if (trace->word_size == 4)
+		value &= 0xffffffffULL;
+	return value;
+}
+
+// a block entered at the return address of the innermost call is a return; a jump out of a block
+// whose fall-through address is now on top of the stack (x86) or in the link register is a call
+static void juc_trace_block_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_trace *trace = (juc_trace *)user_data;
+
+	if (trace->depth > 0 && address == trace->stack[trace->depth - 1]) {
+		trace->depth--;
+		juc_trace_append(trace, JUC_TRACE_RET, address, 0, 0);
+	} else if (trace->last_end != 0 && address != trace->last_end) {
+		uint64_t ret = 0;
+		if (trace->lr_reg < 0) {
+			uint64_t sp = juc_trace_reg(engine, trace, trace->sp_reg);
+			if (uc_mem_read(engine, sp, &ret, trace->word_size) != UC_ERR_OK)
+				ret = 0;
+		} else {
+			// bit 0 is the thumb bit on ARM
+			ret = juc_trace_reg(engine, trace, trace->lr_reg) & ~1ULL;
+		}
+
+		if (ret == trace->last_end && trace->depth < JUC_TRACE_MAX_DEPTH) {
+			trace->stack[trace->depth++] = ret;
+			juc_trace_append(trace, JUC_TRACE_CALL, address, ret, 0);
+		}
+	}
+
+	trace->last_end = address + size;
+}
+
+static void juc_trace_intr_cb(uc_engine *engine, uint32_t intno, void *user_data)
+{
+	juc_trace *trace = (juc_trace *)user_data;
+	juc_trace_append(trace, JUC_TRACE_INTR, intno, juc_trace_reg(engine, trace, trace->pc_reg),
+		juc_trace_reg(engine, trace, trace->value_reg));
+}
+
+static void juc_trace_syscall_cb(uc_engine *engine, void *user_data)
+{
+	juc_trace *trace = (juc_trace *)user_data;
+	juc_trace_append(trace, JUC_TRACE_SYSCALL, juc_trace_reg(engine, trace, trace->value_reg),
+		juc_trace_reg(engine, trace, trace->pc_reg), 0);
+}
+
+static void juc_trace_hooks_del(uc_engine *uc, juc_trace *trace)
+{
+	if (trace->block_hook != 0)
+		uc_hook_del(uc, trace->block_hook);
+	if (trace->intr_hook != 0)
+		uc_hook_del(uc, trace->intr_hook);
+	if (trace->syscall_hook != 0)
+		uc_hook_del(uc, trace->syscall_hook);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_add
+ * Signature: (JIIIIIIII)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1trace_1add
+(JNIEnv *env, jclass cls, jlong engine, jint flags, jint capacity, jint pc_reg, jint sp_reg, jint lr_reg, jint value_reg, jint word_size, jint syscall_insn)
+{
+	uc_engine *uc = (uc_engine *)engine;
+	if (capacity <= 0 || (capacity & (capacity - 1)) != 0 || (word_size != 4 && word_size != 8)) {
+		juc_throw(env, UC_ERR_ARG);
+		return 0;
+	}
+
+	juc_trace *trace = (juc_trace *)calloc(1, sizeof(juc_trace));
+	if (trace == NULL) {
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	trace->pc_reg = pc_reg;
+	trace->sp_reg = sp_reg;
+	trace->lr_reg = lr_reg;
+	trace->value_reg = value_reg;
+	trace->word_size = word_size;
+	trace->capacity = (size_t)capacity;
+	trace->ring = (uint64_t *)calloc(trace->capacity * JUC_TRACE_RECORD, sizeof(uint64_t));
+	if (trace->ring == NULL) {
+		free(trace);
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	uc_err code = UC_ERR_OK;
+	if (flags & JUC_TRACE_CALLS)
+		code = uc_hook_add(uc, &trace->block_hook, UC_HOOK_BLOCK, juc_trace_block_cb, (void *)trace, 1, 0);
+	if (code == UC_ERR_OK && (flags & JUC_TRACE_INTERRUPTS))
+		code = uc_hook_add(uc, &trace->intr_hook, UC_HOOK_INTR, juc_trace_intr_cb, (void *)trace, 1, 0);
+	if (code == UC_ERR_OK && (flags & JUC_TRACE_SYSCALLS) && syscall_insn != 0)
+		code = uc_hook_add(uc, &trace->syscall_hook, UC_HOOK_INSN, juc_trace_syscall_cb, (void *)trace, 1, 0, (int)syscall_insn);
+
+	if (code != UC_ERR_OK) {
+		juc_trace_hooks_del(uc, trace);
+		free(trace->ring);
+		free(trace);
+		juc_throw(env, code);
+		return 0;
+	}
+
+	return (jlong)trace;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1trace_1del
+(JNIEnv *env, jclass cls, jlong engine, jlong ptr)
+{
+	juc_trace *trace = (juc_trace *)ptr;
+	uc_engine *uc = (uc_engine *)engine;
+	if (uc != NULL) {
+		juc_trace_hooks_del(uc, trace);
+	}
+
+	free(trace->ring);
+	free(trace);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_append
+ * Signature: (JIJJJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1trace_1append
+(JNIEnv *env, jclass cls, jlong ptr, jint type, jlong a, jlong b, jlong c)
+{
+	juc_trace *trace = (juc_trace *)ptr;
+	juc_trace_append(trace, (juc_trace_type)type, (uint64_t)a, (uint64_t)b, (uint64_t)c);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_drain
+ * Signature: (J[J)I
+ */
+JNIEXPORT jint JNICALL Java_junicorn_UnicornNative_juc_1trace_1drain
+(JNIEnv *env, jclass cls, jlong ptr, jlongArray out)
+{
+	juc_trace *trace = (juc_trace *)ptr;
+	size_t room = (size_t)(*env)->GetArrayLength(env, out) / JUC_TRACE_RECORD;
+	uint64_t tail = trace->tail;
+	uint64_t head = trace->head;
+	__sync_synchronize();
+
+	size_t count = (size_t)(head - tail);
+	if (count > room)
+		count = room;
+
+	// at most two copies, the readable part of the ring may wrap around once
+	size_t first = trace->capacity - (size_t)(tail & (trace->capacity - 1));
+	if (first > count)
+		first = count;
+	uint64_t *start = &trace->ring[(tail & (trace->capacity - 1)) * JUC_TRACE_RECORD];
+	(*env)->SetLongArrayRegion(env, out, 0, (jsize)(first * JUC_TRACE_RECORD), (jlong *)start);
+	if (count > first)
+		(*env)->SetLongArrayRegion(env, out, (jsize)(first * JUC_TRACE_RECORD), (jsize)((count - first) * JUC_TRACE_RECORD), (jlong *)trace->ring);
+
+	__sync_synchronize();
+	trace->tail = tail + count;
+	return (jint)count;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_dropped
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1trace_1dropped
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_trace *trace = (juc_trace *)ptr;
+	return (jlong)trace->dropped;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_clock
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1trace_1clock
+(JNIEnv *env, jclass cls)
+{
+	return (jlong)juc_trace_now();
+}
+
+typedef struct juc_coverage {
+	uc_hook hook;
+	juc_table blocks;
+	volatile int overflow;
+} juc_coverage;
+
+// values pack the largest size seen for the block in the low half and the hit count in the high half
+static void juc_coverage_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_coverage *coverage = (juc_coverage *)user_data;
+	uint64_t *value = juc_table_insert(&coverage->blocks, address);
+	if (value == NULL) {
+		coverage->overflow = 1;
+		return;
+	}
+
+	uint64_t hits = *value >> 32;
+	uint64_t largest = *value & 0xffffffffULL;
+	if (hits < 0xffffffffULL)
+		hits++;
+	if (size > largest)
+		largest = size;
+	*value = hits << 32 | largest;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_add
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1coverage_1add
+(JNIEnv *env, jclass cls, jlong engine)
+{
+	uc_engine *uc = (uc_engine *)engine;
+	juc_coverage *coverage = (juc_coverage *)calloc(1, sizeof(juc_coverage));
+	if (coverage == NULL || !juc_table_init(&coverage->blocks, 4096)) {
+		free(coverage);
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	uc_err code = uc_hook_add(uc, &coverage->hook, UC_HOOK_BLOCK, juc_coverage_cb, (void *)coverage, 1, 0);
+	if (code != UC_ERR_OK) {
+		juc_table_free(&coverage->blocks);
+		free(coverage);
+		juc_throw(env, code);
+		return 0;
+	}
+
+	return (jlong)coverage;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1coverage_1del
+(JNIEnv *env, jclass cls, jlong engine, jlong ptr)
+{
+	juc_coverage *coverage = (juc_coverage *)ptr;
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = UC_ERR_OK;
+	if (uc != NULL) {
+		code = uc_hook_del(uc, coverage->hook);
+	}
+
+	juc_table_free(&coverage->blocks);
+	free(coverage);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_count
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1coverage_1count
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_coverage *coverage = (juc_coverage *)ptr;
+	return (jlong)coverage->blocks.count;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_blocks
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_junicorn_UnicornNative_juc_1coverage_1blocks
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_coverage *coverage = (juc_coverage *)ptr;
+	juc_table *table = &coverage->blocks;
+
+	// address, size and hit count per block
+	jlongArray result = (*env)->NewLongArray(env, (jsize)(table->count * 3));
+	if (result == NULL)
+		return NULL;
+
+	jlong triple[3];
+	jsize at = 0;
+	for (size_t i = 0; i < table->capacity; i++) {
+		if (!table->used[i])
+			continue;
+		triple[0] = (jlong)table->keys[i];
+		triple[1] = (jlong)(table->values[i] & 0xffffffffULL);
+		triple[2] = (jlong)(table->values[i] >> 32);
+		(*env)->SetLongArrayRegion(env, result, at, 3, triple);
+		at += 3;
+	}
+	return result;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_overflow
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_junicorn_UnicornNative_juc_1coverage_1overflow
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_coverage *coverage = (juc_coverage *)ptr;
+	return coverage->overflow ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1coverage_1reset
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_coverage *coverage = (juc_coverage *)ptr;
+	juc_table_clear(&coverage->blocks);
+	coverage->overflow = 0;
+}
+
+typedef enum juc_heatmap_kind {
+	JUC_HEATMAP_READ = 0,
+	JUC_HEATMAP_WRITE = 1,
+	JUC_HEATMAP_FETCH = 2,
+	JUC_HEATMAP_KINDS = 3,
+} juc_heatmap_kind;
+
+// per kind a table of page number to count, with the last page looked up cached: accesses are
+// mostly sequential and the cached slot stays valid because only an insert can move it
+typedef struct juc_heatmap_counts {
+	juc_table pages;
+	uint64_t last_page;
+	uint64_t *last_count;
+} juc_heatmap_counts;
+
+typedef struct juc_heatmap {
+	uc_hook mem_hook;
+	uc_hook block_hook;
+	int page_bits;
+	juc_heatmap_counts counts[JUC_HEATMAP_KINDS];
+	volatile int overflow;
+} juc_heatmap;
+
+static void juc_heatmap_count(juc_heatmap *heatmap, juc_heatmap_kind kind, uint64_t address)
+{
+	juc_heatmap_counts *counts = &heatmap->counts[kind];
+	uint64_t page = address >> heatmap->page_bits;
+	if (counts->last_count == NULL || counts->last_page != page) {
+		uint64_t *count = juc_table_insert(&counts->pages, page);
+		if (count == NULL) {
+			heatmap->overflow = 1;
+			return;
+		}
+		counts->last_page = page;
+		counts->last_count = count;
+	}
+	(*counts->last_count)++;
+}
+
+static void juc_heatmap_mem_cb(uc_engine *engine, uc_mem_type type, uint64_t address, int size, int64_t value, void *user_data)
+{
+	juc_heatmap *heatmap = (juc_heatmap *)user_data;
+	juc_heatmap_count(heatmap, type == UC_MEM_WRITE ? JUC_HEATMAP_WRITE : JUC_HEATMAP_READ, address);
+}
+
+// fetches are counted per block entry, once for every page the block spans
+static void juc_heatmap_block_cb(uc_engine *engine, uint64_t address, uint32_t size, void *user_data)
+{
+	juc_heatmap *heatmap = (juc_heatmap *)user_data;
+	uint64_t page = address >> heatmap->page_bits;
+	uint64_t last = (size > 0 ? address + size - 1 : address) >> heatmap->page_bits;
+	for (;;) {
+		juc_heatmap_count(heatmap, JUC_HEATMAP_FETCH, page << heatmap->page_bits);
+		if (page == last)
+			break;
+		page++;
+	}
+}
+
+static void juc_heatmap_free(juc_heatmap *heatmap)
+{
+	for (int kind = 0; kind < JUC_HEATMAP_KINDS; kind++)
+		juc_table_free(&heatmap->counts[kind].pages);
+	free(heatmap);
+}
+
+static uint64_t juc_heatmap_total(const uint64_t *row)
+{
+	return row[1] + row[2] + row[3];
+}
+
+static int juc_heatmap_compare(const void *a, const void *b)
+{
+	uint64_t x = juc_heatmap_total((const uint64_t *)a);
+	uint64_t y = juc_heatmap_total((const uint64_t *)b);
+	if (x != y)
+		return x > y ? -1 : 1;
+	return juc_compare_u64(a, b);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_add
+ * Signature: (JI)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1add
+(JNIEnv *env, jclass cls, jlong engine, jint page_bits)
+{
+	uc_engine *uc = (uc_engine *)engine;
+	if (page_bits < 0 || page_bits > 63) {
+		juc_throw(env, UC_ERR_ARG);
+		return 0;
+	}
+
+	juc_heatmap *heatmap = (juc_heatmap *)calloc(1, sizeof(juc_heatmap));
+	if (heatmap == NULL) {
+		juc_throw(env, UC_ERR_NOMEM);
+		return 0;
+	}
+
+	heatmap->page_bits = page_bits;
+	for (int kind = 0; kind < JUC_HEATMAP_KINDS; kind++) {
+		if (!juc_table_init(&heatmap->counts[kind].pages, 256)) {
+			juc_heatmap_free(heatmap);
+			juc_throw(env, UC_ERR_NOMEM);
+			return 0;
+		}
+	}
+
+	uc_err code = uc_hook_add(uc, &heatmap->mem_hook, UC_HOOK_MEM_READ | UC_HOOK_MEM_WRITE, juc_heatmap_mem_cb, (void *)heatmap, 1, 0);
+	if (code == UC_ERR_OK) {
+		code = uc_hook_add(uc, &heatmap->block_hook, UC_HOOK_BLOCK, juc_heatmap_block_cb, (void *)heatmap, 1, 0);
+		if (code != UC_ERR_OK) {
+			uc_hook_del(uc, heatmap->mem_hook);
+		}
+	}
+
+	if (code != UC_ERR_OK) {
+		juc_heatmap_free(heatmap);
+		juc_throw(env, code);
+		return 0;
+	}
+
+	return (jlong)heatmap;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1del
+(JNIEnv *env, jclass cls, jlong engine, jlong ptr)
+{
+	juc_heatmap *heatmap = (juc_heatmap *)ptr;
+	uc_engine *uc = (uc_engine *)engine;
+	uc_err code = UC_ERR_OK;
+	if (uc != NULL) {
+		code = uc_hook_del(uc, heatmap->mem_hook);
+		uc_hook_del(uc, heatmap->block_hook);
+	}
+
+	juc_heatmap_free(heatmap);
+	if (code != UC_ERR_OK) {
+		juc_throw(env, code);
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_read
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1read
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_heatmap *heatmap = (juc_heatmap *)ptr;
+
+	// page address, reads, writes and fetches per row; rows are indexed by page through a table
+	size_t capacity = 0;
+	for (int kind = 0; kind < JUC_HEATMAP_KINDS; kind++)
+		capacity += heatmap->counts[kind].pages.count;
+
+	juc_table index;
+	uint64_t *rows = (uint64_t *)calloc(capacity > 0 ? capacity * 4 : 4, sizeof(uint64_t));
+	if (rows == NULL || !juc_table_init(&index, capacity)) {
+		free(rows);
+		juc_throw(env, UC_ERR_NOMEM);
+		return NULL;
+	}
+
+	size_t count = 0;
+	for (int kind = 0; kind < JUC_HEATMAP_KINDS; kind++) {
+		juc_table *pages = &heatmap->counts[kind].pages;
+		for (size_t i = 0; i < pages->capacity; i++) {
+			if (!pages->used[i])
+				continue;
+
+			uint64_t *row_index = juc_table_find(&index, pages->keys[i]);
+			if (row_index == NULL) {
+				row_index = juc_table_insert(&index, pages->keys[i]);
+				if (row_index == NULL) {
+					juc_table_free(&index);
+					free(rows);
+					juc_throw(env, UC_ERR_NOMEM);
+					return NULL;
+				}
+				*row_index = count;
+				rows[count * 4] = pages->keys[i] << heatmap->page_bits;
+				count++;
+			}
+			rows[*row_index * 4 + 1 + kind] = pages->values[i];
+		}
+	}
+	juc_table_free(&index);
+
+	qsort(rows, count, 4 * sizeof(uint64_t), juc_heatmap_compare);
+
+	jlongArray result = (*env)->NewLongArray(env, (jsize)(count * 4));
+	if (result != NULL)
+		(*env)->SetLongArrayRegion(env, result, 0, (jsize)(count * 4), (jlong *)rows);
+	free(rows);
+	return result;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_overflow
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1overflow
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_heatmap *heatmap = (juc_heatmap *)ptr;
+	return heatmap->overflow ? JNI_TRUE : JNI_FALSE;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1reset
+(JNIEnv *env, jclass cls, jlong ptr)
+{
+	juc_heatmap *heatmap = (juc_heatmap *)ptr;
+	for (int kind = 0; kind < JUC_HEATMAP_KINDS; kind++) {
+		juc_table_clear(&heatmap->counts[kind].pages);
+		heatmap->counts[kind].last_count = NULL;
+	}
+	heatmap->overflow = 0;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1context_1size
+(JNIEnv *env, jclass cls, jlong context)
+{
+	uc_context *ctx = (uc_context *)context;
+	return (jlong)ctx->size;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_read
+ * Signature: (J[BI)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1read__J_3BI
+(JNIEnv *env, jclass cls, jlong context, jbyteArray data, jint offset)
+{
+	uc_context *ctx = (uc_context *)context;
+	(*env)->SetByteArrayRegion(env, data, offset, (jsize)ctx->size, (const jbyte *)ctx->data);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_read
+ * Signature: (JLjava/nio/ByteBuffer;I)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1read__JLjava_nio_ByteBuffer_2I
+(JNIEnv *env, jclass cls, jlong context, jobject buffer, jint offset)
+{
+	uc_context *ctx = (uc_context *)context;
+	char *bytes = (char *)(*env)->GetDirectBufferAddress(env, buffer);
+	if (bytes == NULL) {
+		juc_throw(env, UC_ERR_ARG);
+		return;
+	}
+
+	memcpy(bytes + offset, ctx->data, ctx->size);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_write
+ * Signature: (J[BI)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1write__J_3BI
+(JNIEnv *env, jclass cls, jlong context, jbyteArray data, jint offset)
+{
+	uc_context *ctx = (uc_context *)context;
+	(*env)->GetByteArrayRegion(env, data, offset, (jsize)ctx->size, (jbyte *)ctx->data);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_write
+ * Signature: (JLjava/nio/ByteBuffer;I)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1write__JLjava_nio_ByteBuffer_2I
+(JNIEnv *env, jclass cls, jlong context, jobject buffer, jint offset)
+{
+	uc_context *ctx = (uc_context *)context;
+	char *bytes = (char *)(*env)->GetDirectBufferAddress(env, buffer);
+	if (bytes == NULL) {
+		juc_throw(env, UC_ERR_ARG);
+		return;
+	}
+
+	memcpy(ctx->data, bytes + offset, ctx->size);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_copy
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1copy
+(JNIEnv *env, jclass cls, jlong source, jlong target)
+{
+	uc_context *src = (uc_context *)source;
+	uc_context *dst = (uc_context *)target;
+	memcpy(dst->data, src->data, min(src->size, dst->size));
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_set_predicate
+ * Signature: (J[B)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1hook_1set_1predicate
+(JNIEnv *env, jclass cls, jlong handle, jbyteArray code)
+{
+	juc_hook *hook = (juc_hook *)handle;
+	juc_program *program = NULL;
+
+	if (code != NULL) {
+		jsize length = (*env)->GetArrayLength(env, code);
+		if (length > JUC_PROGRAM_MAX_LENGTH) {
+			juc_throw(env, UC_ERR_ARG);
+			return 0;
+		}
+
+		program = (juc_program *)malloc(sizeof(juc_program) + (size_t)length);
+		if (program == NULL) {
+			juc_throw(env, UC_ERR_NOMEM);
+			return 0;
+		}
+
+		program->length = (size_t)length;
+		(*env)->GetByteArrayRegion(env, code, 0, length, (jbyte *)program->code);
+	}
+
+	// the emulation thread may still be evaluating the old program, the caller frees it
+	juc_program *old = hook->predicate;
+	hook->predicate = program;
+	return (jlong)old;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_program_free
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1program_1free
+(JNIEnv *env, jclass cls, jlong program)
+{
+	free((juc_program *)program);
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_suppress_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1hook_1suppress_1reset
+(JNIEnv *env, jclass cls, jlong handle)
+{
+	juc_hook *hook = (juc_hook *)handle;
+	if (hook->suppressed != NULL) {
+		hook->suppress_reset = 1;
+	}
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_suppress_count
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1hook_1suppress_1count
+(JNIEnv *env, jclass cls, jlong handle)
+{
+	juc_hook *hook = (juc_hook *)handle;
+	if (hook->suppressed == NULL || hook->suppress_reset)
+		return 0;
+	return (jlong)hook->suppressed->count;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_set_enabled
+ * Signature: (JZ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1hook_1set_1enabled
+(JNIEnv *env, jclass cls, jlong handle, jboolean enabled)
+{
+	juc_hook *hook = (juc_hook *)handle;
+	hook->disabled = !enabled;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_upcalls
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1hook_1upcalls
+(JNIEnv *env, jclass cls, jlong handle)
+{
+	return ((juc_hook *)handle)->upcalls;
+}
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_error_counts
+ * Signature: ([J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1error_1counts
+(JNIEnv *env, jclass cls, jlongArray counts)
+{
+	jsize length = (*env)->GetArrayLength(env, counts);
+	(*env)->SetLongArrayRegion(env, counts, 0, length < JUC_ERR_COUNT ? length : JUC_ERR_COUNT, juc_error_counts);
+}
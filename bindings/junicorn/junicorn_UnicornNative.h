@@ -127,6 +127,78 @@ JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_uc_1hook_1add
 JNIEXPORT void JNICALL Java_junicorn_UnicornNative_uc_1hook_1del
   (JNIEnv *, jclass, jlong, jlong);
 
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_free
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1hook_1free
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_set_predicate
+ * Signature: (J[B)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1hook_1set_1predicate
+  (JNIEnv *, jclass, jlong, jbyteArray);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_program_free
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1program_1free
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_set_enabled
+ * Signature: (JZ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1hook_1set_1enabled
+  (JNIEnv *, jclass, jlong, jboolean);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_upcalls
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1hook_1upcalls
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_error_counts
+ * Signature: ([J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1error_1counts
+  (JNIEnv *, jclass, jlongArray);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_suppress_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1hook_1suppress_1reset
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_hook_suppress_count
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1hook_1suppress_1count
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watch_add
+ * Signature: (JIJJIIJZ)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1watch_1add
+  (JNIEnv *, jclass, jlong, jint, jlong, jlong, jint, jint, jlong, jboolean);
+
 /*
  * Class:     junicorn_UnicornNative
  * Method:    uc_mem_map
@@ -207,6 +279,382 @@ JNIEXPORT void JNICALL Java_junicorn_UnicornNative_uc_1context_1restore
 JNIEXPORT jobjectArray JNICALL Java_junicorn_UnicornNative_uc_1mem_1regions
   (JNIEnv *, jclass, jlong);
 
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_mem_read
+ * Signature: (JJLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1mem_1read
+  (JNIEnv *, jclass, jlong, jlong, jobject, jint, jint);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_mem_write
+ * Signature: (JJLjava/nio/ByteBuffer;II)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1mem_1write
+  (JNIEnv *, jclass, jlong, jlong, jobject, jint, jint);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_buffer_address
+ * Signature: (Ljava/nio/ByteBuffer;)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1buffer_1address
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_add
+ * Signature: (JZ)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1counter_1add
+  (JNIEnv *, jclass, jlong, jboolean);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1counter_1del
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_read
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1counter_1read
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1counter_1reset
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_counter_stop
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1counter_1stop
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_add
+ * Signature: (JJI[I)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1add
+  (JNIEnv *, jclass, jlong, jlong, jint, jintArray);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1del
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_blocks
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1blocks
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_reason
+ * Signature: (J)I
+ */
+JNIEXPORT jint JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1reason
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_watchdog_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1watchdog_1reset
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_add
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1add
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1del
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_set
+ * Signature: (J[J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1set
+  (JNIEnv *, jclass, jlong, jlongArray);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_arm
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1arm
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_hit
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1hit
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_breakpoints_address
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1breakpoints_1address
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_add
+ * Signature: (JJIIIIJJ)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1profiler_1add
+  (JNIEnv *, jclass, jlong, jlong, jint, jint, jint, jint, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1profiler_1del
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_request
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1profiler_1request
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_drain
+ * Signature: (J[J)I
+ */
+JNIEXPORT jint JNICALL Java_junicorn_UnicornNative_juc_1profiler_1drain
+  (JNIEnv *, jclass, jlong, jlongArray);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_profiler_dropped
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1profiler_1dropped
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_add
+ * Signature: (JIIIIIIII)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1trace_1add
+  (JNIEnv *, jclass, jlong, jint, jint, jint, jint, jint, jint, jint, jint);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1trace_1del
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_append
+ * Signature: (JIJJJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1trace_1append
+  (JNIEnv *, jclass, jlong, jint, jlong, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_drain
+ * Signature: (J[J)I
+ */
+JNIEXPORT jint JNICALL Java_junicorn_UnicornNative_juc_1trace_1drain
+  (JNIEnv *, jclass, jlong, jlongArray);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_dropped
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1trace_1dropped
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_trace_clock
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1trace_1clock
+  (JNIEnv *, jclass);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_add
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1coverage_1add
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1coverage_1del
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_count
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1coverage_1count
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_blocks
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_junicorn_UnicornNative_juc_1coverage_1blocks
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_overflow
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_junicorn_UnicornNative_juc_1coverage_1overflow
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_coverage_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1coverage_1reset
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_add
+ * Signature: (JI)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1add
+  (JNIEnv *, jclass, jlong, jint);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_del
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1del
+  (JNIEnv *, jclass, jlong, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_read
+ * Signature: (J)[J
+ */
+JNIEXPORT jlongArray JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1read
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_overflow
+ * Signature: (J)Z
+ */
+JNIEXPORT jboolean JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1overflow
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_heatmap_reset
+ * Signature: (J)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1heatmap_1reset
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_size
+ * Signature: (J)J
+ */
+JNIEXPORT jlong JNICALL Java_junicorn_UnicornNative_juc_1context_1size
+  (JNIEnv *, jclass, jlong);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_read
+ * Signature: (J[BI)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1read__J_3BI
+  (JNIEnv *, jclass, jlong, jbyteArray, jint);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_read
+ * Signature: (JLjava/nio/ByteBuffer;I)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1read__JLjava_nio_ByteBuffer_2I
+  (JNIEnv *, jclass, jlong, jobject, jint);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_write
+ * Signature: (J[BI)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1write__J_3BI
+  (JNIEnv *, jclass, jlong, jbyteArray, jint);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_write
+ * Signature: (JLjava/nio/ByteBuffer;I)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1write__JLjava_nio_ByteBuffer_2I
+  (JNIEnv *, jclass, jlong, jobject, jint);
+
+/*
+ * Class:     junicorn_UnicornNative
+ * Method:    juc_context_copy
+ * Signature: (JJ)V
+ */
+JNIEXPORT void JNICALL Java_junicorn_UnicornNative_juc_1context_1copy
+  (JNIEnv *, jclass, jlong, jlong);
+
 #ifdef __cplusplus
 }
 #endif
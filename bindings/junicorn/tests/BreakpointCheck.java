@@ -0,0 +1,84 @@
+/* Native breakpoints stop in front of the instruction at the address, and a run resumes past them; watches are edge triggered */
+
+import junicorn.*;
+
+public class BreakpointCheck extends Check
+{
+    public static void main(String args[]) throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+
+        breakpoints();
+        watch();
+        done();
+    }
+
+    static void breakpoints() throws UnicornException
+    {
+        byte[] code = inc_eax(8);
+        Unicorn uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.mem_map(ADDRESS, 0x1000, Unicorn.UC_PROT_ALL);
+        uc.mem_write(ADDRESS, code);
+
+        uc.set_breakpoints(new long[]{ADDRESS + 3, ADDRESS + 6});
+        uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+        check("first breakpoint not hit", uc.breakpoint_hit());
+        equal("first breakpoint address", ADDRESS + 3, uc.breakpoint_address());
+        equal("EIP at the first breakpoint", ADDRESS + 3, uc.reg_read(Unicorn.UC_X86_REG_EIP));
+        equal("instructions before the first breakpoint", 3, uc.reg_read(Unicorn.UC_X86_REG_EAX));
+
+        // the begin address never triggers, so the run moves on to the next breakpoint
+        uc.emu_start(ADDRESS + 3, ADDRESS + code.length, 0, 0);
+        check("second breakpoint not hit", uc.breakpoint_hit());
+        equal("second breakpoint address", ADDRESS + 6, uc.breakpoint_address());
+        equal("instructions before the second breakpoint", 6, uc.reg_read(Unicorn.UC_X86_REG_EAX));
+
+        uc.emu_start(ADDRESS + 6, ADDRESS + code.length, 0, 0);
+        check("breakpoint reported for a run that reached until", !uc.breakpoint_hit());
+        equal("EAX after the last run", 8, uc.reg_read(Unicorn.UC_X86_REG_EAX));
+
+        uc.set_breakpoints(new long[0]);
+        uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+        check("breakpoint hit after the set was cleared", !uc.breakpoint_hit());
+
+        uc.reg_write(Unicorn.UC_X86_REG_EAX, 0);
+        equal("emu_run_until stop address", ADDRESS + 5, uc.emu_run_until(ADDRESS, new long[]{ADDRESS + 5}));
+        equal("instructions before the emu_run_until stop", 5, uc.reg_read(Unicorn.UC_X86_REG_EAX));
+        uc.close();
+    }
+
+    static class Recorder implements MemoryAccessHook
+    {
+        int calls;
+        long last_value;
+
+        public void hook(Unicorn uc, int type, long address, int size, long value, Object user_data)
+        {
+            calls++;
+            last_value = value;
+        }
+    }
+
+    static void watch() throws UnicornException
+    {
+        byte[] code = concat(store(DATA, 1), store(DATA, 0), store(DATA, 0), store(DATA, 5), store(DATA, 0), store(DATA + 4, 0));
+        Unicorn uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.mem_map(ADDRESS, 0x1000, Unicorn.UC_PROT_ALL);
+        uc.mem_map(DATA, 0x1000, Unicorn.UC_PROT_ALL);
+        uc.mem_write(ADDRESS, code);
+        uc.mem_write(DATA, new byte[]{7, 0, 0, 0, 9, 0, 0, 0});
+
+        // fires when the dword becomes 0, not for the store that rewrites 0 or the store next to it
+        Recorder zero = new Recorder();
+        uc.watch_add(Unicorn.UC_HOOK_MEM_WRITE, DATA, 4, Unicorn.JUC_WATCH_EQ, 0, false, zero, null);
+        // fires for every store that makes the dword greater than 3 from at most 3
+        Recorder above = new Recorder();
+        uc.watch_add(Unicorn.UC_HOOK_MEM_WRITE, DATA, 4, Unicorn.JUC_WATCH_GT, 3, false, above, null);
+
+        uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+        equal("EQ 0 watch triggers", 2, zero.calls);
+        equal("GT 3 watch triggers", 1, above.calls);
+        equal("value seen by the GT 3 watch", 5, above.last_value);
+        uc.close();
+    }
+}
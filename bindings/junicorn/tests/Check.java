@@ -0,0 +1,71 @@
+/* Shared assertions for the behaviour checks: every failure is reported, then the check exits non-zero */
+
+public class Check
+{
+    public static final int ADDRESS = 0x1000000;
+    public static final int DATA = 0x1100000;
+
+    private static int failures;
+
+    static void check(String what, boolean ok)
+    {
+        if (!ok)
+        {
+            System.out.println(">>> FAIL: " + what);
+            failures++;
+        }
+    }
+
+    static void equal(String what, long expected, long actual)
+    {
+        check(String.format("%s: expected 0x%x, got 0x%x", what, expected, actual), expected == actual);
+    }
+
+    static void done()
+    {
+        if (failures != 0)
+        {
+            System.out.println(">>> " + failures + " check(s) failed");
+            System.exit(1);
+        }
+        System.out.println(">>> OK");
+    }
+
+    // count times "inc eax"
+    static byte[] inc_eax(int count)
+    {
+        byte[] code = new byte[count];
+        for (int i = 0; i < count; i++)
+            code[i] = 0x40;
+        return code;
+    }
+
+    // mov dword [address], value
+    static byte[] store(int address, int value)
+    {
+        byte[] code = new byte[10];
+        code[0] = (byte) 0xc7;
+        code[1] = 0x05;
+        for (int i = 0; i < 4; i++)
+        {
+            code[2 + i] = (byte) (address >>> (i * 8));
+            code[6 + i] = (byte) (value >>> (i * 8));
+        }
+        return code;
+    }
+
+    static byte[] concat(byte[]... parts)
+    {
+        int length = 0;
+        for (byte[] part : parts)
+            length += part.length;
+        byte[] all = new byte[length];
+        int at = 0;
+        for (byte[] part : parts)
+        {
+            System.arraycopy(part, 0, all, at, part.length);
+            at += part.length;
+        }
+        return all;
+    }
+}
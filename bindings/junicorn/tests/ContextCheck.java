@@ -0,0 +1,58 @@
+/* Context serialization: toBytes/fromBytes round-trips the CPU state, within an engine and into another one */
+
+import junicorn.*;
+
+import java.util.Arrays;
+
+public class ContextCheck extends Check
+{
+    public static void main(String args[]) throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+
+        Unicorn uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.reg_write(Unicorn.UC_X86_REG_EAX, 0x12345678);
+        uc.reg_write(Unicorn.UC_X86_REG_ECX, 0xcafe);
+        uc.reg_write(Unicorn.UC_X86_REG_EIP, ADDRESS);
+
+        UnicornContext ctx = uc.save_context();
+        byte[] bytes = ctx.toBytes();
+        equal("serialized size", ctx.serializedSize(), bytes.length);
+        ctx.close();
+
+        uc.reg_write(Unicorn.UC_X86_REG_EAX, 0);
+        uc.reg_write(Unicorn.UC_X86_REG_ECX, 0);
+        UnicornContext restored = UnicornContext.fromBytes(uc, bytes);
+        uc.restore_context(restored);
+        restored.close();
+        equal("EAX after restore", 0x12345678, uc.reg_read(Unicorn.UC_X86_REG_EAX));
+        equal("ECX after restore", 0xcafe, uc.reg_read(Unicorn.UC_X86_REG_ECX));
+        equal("EIP after restore", ADDRESS, uc.reg_read(Unicorn.UC_X86_REG_EIP));
+
+        Unicorn other = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        UnicornContext copied = UnicornContext.fromBytes(other, bytes);
+        other.restore_context(copied);
+        copied.close();
+        equal("EAX in another engine", 0x12345678, other.reg_read(Unicorn.UC_X86_REG_EAX));
+        UnicornContext again = other.save_context();
+        check("bytes re-serialized from another engine differ", Arrays.equals(bytes, again.toBytes()));
+        again.close();
+        other.close();
+
+        Unicorn arm = new Unicorn(Unicorn.UC_ARCH_ARM, Unicorn.UC_MODE_ARM);
+        boolean rejected = false;
+        try
+        {
+            UnicornContext.fromBytes(arm, bytes).close();
+        }
+        catch (UnicornException e)
+        {
+            rejected = true;
+        }
+        check("x86 context accepted by an ARM engine", rejected);
+        arm.close();
+
+        uc.close();
+        done();
+    }
+}
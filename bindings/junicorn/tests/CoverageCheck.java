@@ -0,0 +1,77 @@
+/* BlockCoverage: the drcov log has the version 2 header, one module per region and one entry per block */
+
+import junicorn.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+public class CoverageCheck extends Check
+{
+    public static void main(String args[]) throws IOException, UnicornException
+    {
+        System.loadLibrary("unicorn");
+
+        // two blocks: inc eax x4; jmp +0 | inc eax x4
+        byte[] code = concat(inc_eax(4), new byte[]{(byte) 0xeb, 0x00}, inc_eax(4));
+        Unicorn uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.mem_map(ADDRESS, 0x1000, Unicorn.UC_PROT_ALL);
+        uc.mem_map(DATA, 0x1000, Unicorn.UC_PROT_READ | Unicorn.UC_PROT_WRITE);
+        uc.mem_write(ADDRESS, code);
+
+        BlockCoverage coverage = uc.block_coverage();
+        uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+        uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+        equal("distinct blocks", 2, coverage.count());
+
+        long[] blocks = coverage.blocks();
+        equal("block table length", 6, blocks.length);
+        if (blocks.length == 6)
+        {
+            equal("first block address", ADDRESS, blocks[0]);
+            equal("first block size", 6, blocks[1]);
+            equal("first block hits", 2, blocks[2]);
+            equal("second block address", ADDRESS + 6, blocks[3]);
+            equal("second block hits", 2, blocks[5]);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        coverage.write_drcov(out, begin -> begin == ADDRESS ? "code.bin" : "data.bin");
+        byte[] log = out.toByteArray();
+        String text = new String(log, StandardCharsets.ISO_8859_1);
+        String table_line = "BB Table: 2 bbs\n";
+        int table = text.indexOf(table_line);
+        check("no BB table line in:\n" + text, table >= 0);
+        if (table >= 0)
+        {
+            String header = text.substring(0, table);
+            String expected = "DRCOV VERSION: 2\n"
+                    + "DRCOV FLAVOR: drcov\n"
+                    + "Module Table: version 2, count 2\n"
+                    + "Columns: id, base, end, entry, checksum, timestamp, path\n"
+                    + String.format(" 0, 0x%016x, 0x%016x, 0x%016x, 0x%08x, 0x%08x, code.bin\n", ADDRESS, ADDRESS + 0x1000, 0, 0, 0)
+                    + String.format(" 1, 0x%016x, 0x%016x, 0x%016x, 0x%08x, 0x%08x, data.bin\n", DATA, DATA + 0x1000, 0, 0, 0);
+            check("drcov header differs:\n" + header, header.equals(expected));
+
+            // bb_entry_t: uint32 start offset, uint16 size, uint16 module id
+            int start = table + table_line.length();
+            equal("BB table bytes", 16, log.length - start);
+            if (log.length - start == 16)
+            {
+                ByteBuffer entries = ByteBuffer.wrap(log, start, 16).order(ByteOrder.LITTLE_ENDIAN);
+                equal("first entry offset", 0, entries.getInt());
+                equal("first entry size", 6, entries.getShort());
+                equal("first entry module", 0, entries.getShort());
+                equal("second entry offset", 6, entries.getInt());
+                entries.getShort();
+                equal("second entry module", 0, entries.getShort());
+            }
+        }
+
+        coverage.close();
+        uc.close();
+        done();
+    }
+}
@@ -0,0 +1,83 @@
+/* HookCondition: the native evaluator only lets an upcall through when the compiled condition holds */
+
+import junicorn.*;
+
+public class HookConditionCheck extends Check
+{
+    static final int INSTRUCTIONS = 8;
+
+    static class Counter implements CodeHook
+    {
+        int calls;
+        long last_address;
+
+        public void hook(Unicorn uc, long address, int size, Object user_data)
+        {
+            calls++;
+            last_address = address;
+        }
+    }
+
+    public static void main(String args[]) throws UnicornException
+    {
+        System.loadLibrary("unicorn");
+
+        byte[] code = inc_eax(INSTRUCTIONS);
+        Unicorn uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.mem_map(ADDRESS, 0x1000, Unicorn.UC_PROT_ALL);
+        uc.mem_map(DATA, 0x1000, Unicorn.UC_PROT_ALL);
+        uc.mem_write(ADDRESS, code);
+        uc.mem_write(DATA, new byte[]{0x44, 0x33, 0x22, 0x11});
+
+        // code hooks run before the instruction, so EAX counts the instructions already executed
+        Counter reg = add(uc, HookCondition.reg(Unicorn.UC_X86_REG_EAX).eq(3));
+        Counter address = add(uc, HookCondition.arg(0).ge(ADDRESS + 6));
+        Counter load = add(uc, HookCondition.mem(HookCondition.constant(DATA), 4).eq(0x11223344));
+        Counter unmapped = add(uc, HookCondition.mem(HookCondition.constant(0x7000000), 4).eq(0).or(HookCondition.constant(1)));
+        Counter signed = add(uc, HookCondition.reg(Unicorn.UC_X86_REG_EAX).minus(4).slt(0)
+                .and(HookCondition.reg(Unicorn.UC_X86_REG_EAX).lt(4).not().not()));
+        Counter arithmetic = add(uc, HookCondition.reg(Unicorn.UC_X86_REG_EAX).shl(4).bitor(HookCondition.constant(1)).mask(0xf1).eq(0x21));
+
+        uc.reg_write(Unicorn.UC_X86_REG_EAX, 0);
+        uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+
+        equal("EAX == 3 upcalls", 1, reg.calls);
+        equal("EAX == 3 address", ADDRESS + 3, reg.last_address);
+        equal("address >= +6 upcalls", 2, address.calls);
+        equal("[DATA] == 0x11223344 upcalls", INSTRUCTIONS, load.calls);
+        equal("load from unmapped memory upcalls", 0, unmapped.calls);
+        equal("EAX - 4 < 0 signed upcalls", 4, signed.calls);
+        equal("(EAX << 4 | 1) & 0xf1 == 0x21 upcalls", 1, arithmetic.calls);
+        equal("(EAX << 4 | 1) & 0xf1 == 0x21 address", ADDRESS + 2, arithmetic.last_address);
+
+        // a disabled hook gets no upcalls, removing the condition passes every instruction again
+        uc.hook_set_enabled(reg, false);
+        uc.hook_set_condition(address, null);
+        uc.reg_write(Unicorn.UC_X86_REG_EAX, 0);
+        uc.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+        equal("disabled hook upcalls", 1, reg.calls);
+        equal("unconditional hook upcalls", 2 + INSTRUCTIONS, address.calls);
+
+        boolean rejected = false;
+        try
+        {
+            uc.hook_set_condition(reg, HookCondition.reg(Unicorn.UC_X86_REG_XMM0).eq(0));
+        }
+        catch (IllegalArgumentException e)
+        {
+            rejected = true;
+        }
+        check("condition on a 128-bit register accepted", rejected);
+
+        uc.close();
+        done();
+    }
+
+    static Counter add(Unicorn uc, HookCondition condition) throws UnicornException
+    {
+        Counter counter = new Counter();
+        uc.hook_add(Unicorn.UC_HOOK_CODE, counter, ADDRESS, ADDRESS + 0xfff, null);
+        uc.hook_set_condition(counter, condition);
+        return counter;
+    }
+}
@@ -0,0 +1,76 @@
+/* MachineSnapshot: write/open/restore round-trips registers, the region list and region contents */
+
+import junicorn.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+public class SnapshotCheck extends Check
+{
+    public static void main(String args[]) throws IOException, UnicornException
+    {
+        System.loadLibrary("unicorn");
+
+        byte[] code = inc_eax(16);
+        byte[] data = {1, 2, 3, 4, 5, 6, 7, 8};
+        Unicorn uc = new Unicorn(Unicorn.UC_ARCH_X86, Unicorn.UC_MODE_32);
+        uc.mem_map(ADDRESS, 0x1000, Unicorn.UC_PROT_READ | Unicorn.UC_PROT_EXEC);
+        uc.mem_map(DATA, 0x2000, Unicorn.UC_PROT_READ | Unicorn.UC_PROT_WRITE);
+        uc.mem_write(ADDRESS, code);
+        uc.mem_write(DATA + 0x1ff8, data);
+        uc.reg_write(Unicorn.UC_X86_REG_EAX, 0x1234);
+        uc.reg_write(Unicorn.UC_X86_REG_ESP, DATA + 0x1000);
+
+        Path path = Files.createTempFile("junicorn", ".snapshot");
+        try
+        {
+            MachineSnapshot.write(uc, path);
+            try (MachineSnapshot snapshot = MachineSnapshot.open(path))
+            {
+                Unicorn copy = snapshot.newEngine();
+                check_state("new engine", copy, code, data);
+
+                // restore discards writes, registers and regions made since
+                copy.mem_write(DATA + 0x1ff8, new byte[8]);
+                copy.reg_write(Unicorn.UC_X86_REG_EAX, 0);
+                copy.mem_map(0x2000000, 0x1000, Unicorn.UC_PROT_ALL);
+                copy.emu_start(ADDRESS, ADDRESS + code.length, 0, 0);
+                equal("EAX after running the copy", code.length, copy.reg_read(Unicorn.UC_X86_REG_EAX));
+                snapshot.restore(copy);
+                check_state("restored engine", copy, code, data);
+                copy.close();
+            }
+        }
+        finally
+        {
+            Files.delete(path);
+        }
+
+        uc.close();
+        done();
+    }
+
+    static void check_state(String engine, Unicorn uc, byte[] code, byte[] data) throws UnicornException
+    {
+        equal(engine + " EAX", 0x1234, uc.reg_read(Unicorn.UC_X86_REG_EAX));
+        equal(engine + " ESP", DATA + 0x1000, uc.reg_read(Unicorn.UC_X86_REG_ESP));
+
+        MemoryRegion[] regions = uc.mem_regions();
+        Arrays.sort(regions, (a, b) -> Long.compare(a.begin, b.begin));
+        equal(engine + " region count", 2, regions.length);
+        if (regions.length == 2)
+        {
+            equal(engine + " code begin", ADDRESS, regions[0].begin);
+            equal(engine + " code end", ADDRESS + 0xfff, regions[0].end);
+            equal(engine + " code perms", Unicorn.UC_PROT_READ | Unicorn.UC_PROT_EXEC, regions[0].perms);
+            equal(engine + " data begin", DATA, regions[1].begin);
+            equal(engine + " data end", DATA + 0x1fff, regions[1].end);
+            equal(engine + " data perms", Unicorn.UC_PROT_READ | Unicorn.UC_PROT_WRITE, regions[1].perms);
+        }
+
+        check(engine + " code differs", Arrays.equals(code, uc.mem_read(ADDRESS, code.length)));
+        check(engine + " data differs", Arrays.equals(data, uc.mem_read(DATA + 0x1ff8, data.length)));
+    }
+}